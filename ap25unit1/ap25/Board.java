@@ -69,6 +69,48 @@ public interface Board {
    */
   List<Move> findLegalMoves(Color color);
 
+  /**
+   * 指定された色の合法手の位置をマスクで取得
+   * ビット k が位置 k に対応する。リストを作らないので、探索中に繰り返し呼んでもよい
+   * 標準の実装は findLegalMoves から作るので、各実装で効率のよい方法に置き換えること
+   * @param color 手番の色
+   * @return 合法手のマスク（パスは含まない。打てる手がなければ0）
+   */
+  default long legalMask(Color color) {
+    long mask = 0;
+    for (var move : findLegalMoves(color))
+      if (move.isPass() == false) mask |= 1L << move.getIndex();
+    return mask;
+  }
+
+  /**
+   * 指定された色の合法手の位置を配列に書き込む
+   * 探索の深さごとに配列を用意して再利用すれば、ヒープを確保せずに合法手を列挙できる
+   * @param color 手番の色
+   * @param moves 書き込み先の配列（長さ LENGTH 以上）
+   * @return 書き込んだ手の数（打てる手がない場合は Move.PASS を1つ書き込む）
+   */
+  default int findLegalIndexes(Color color, int[] moves) {
+    int n = 0;
+    for (long m = legalMask(color); m != 0; m &= m - 1)
+      moves[n++] = Long.numberOfTrailingZeros(m);
+    if (n == 0) moves[n++] = Move.PASS;
+    return n;
+  }
+
+  /**
+   * 指定された手が合法手かどうかを判定
+   * パスは打てる手がない場合だけ合法とする
+   * @param move 判定する手（手の色を手番として判定する）
+   * @return 合法手ならtrue
+   */
+  default boolean isLegalMove(Move move) {
+    long legal = legalMask(move.getColor());
+    if (move.isPass()) return legal == 0;
+    int k = move.getIndex();
+    return 0 <= k && k < Long.SIZE && (legal >>> k & 1) != 0;
+  }
+
   /**
    * 指定された手を打った後の盤面を取得
    * @param move 打つ手
@@ -0,0 +1,507 @@
+package myplayer;
+
+import static ap25.Color.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import ap25.*;
+
+/**
+ * ビットボードによるオセロのボード実装
+ * 黒石・白石・障害物をそれぞれ64ビット整数のマスクで保持し、
+ * シフトとマスクの伝播で合法手の生成と石の反転を行う
+ * ビット k は MyBoard の配列インデックス k（= 行 * SIZE + 列）に対応する
+ * ap25 の標準の大きさ専用の実装で、シフト量とマスクが定数になる。ほかの大きさの盤面は MyVariantBoard を使う
+ */
+public class BitBoard implements Board, Cloneable {
+  /** 盤面全体のマスク */
+  static final long FULL = LENGTH == 64 ? -1L : (1L << LENGTH) - 1;
+  /** a列（左端）以外のマスク */
+  static final long NOT_LEFT;
+  /** 右端の列以外のマスク */
+  static final long NOT_RIGHT;
+
+  static {
+    long left = 0, right = 0;
+    for (int row = 0; row < SIZE; row++) {
+      left |= 1L << Move.index(0, row);
+      right |= 1L << Move.index(SIZE - 1, row);
+    }
+    NOT_LEFT = FULL & ~left;
+    NOT_RIGHT = FULL & ~right;
+  }
+
+  /** 黒石のマスク */
+  long black;
+  /** 白石のマスク */
+  long white;
+  /** 障害物のマスク */
+  long block;
+  /** 最後に打たれた手 */
+  Move move = Move.ofPass(NONE);
+  /** 石と障害物の配置に対する Zobrist ハッシュ（手番は含まない） */
+  long hash;
+  /** 計算済みの黒の合法手のマスク */
+  long legalBlack;
+  /** 計算済みの白の合法手のマスク */
+  long legalWhite;
+  /** 合法手のマスクのうち計算済みのもの（ビット0:黒、ビット1:白）。石の配置が変わると0に戻す */
+  int legalValid;
+  /** MyPatternEval のパターンの番号（付けられていればnull以外。石の配置とともに更新する） */
+  int[] patterns;
+
+  /** Zobrist ハッシュの乱数表（[0:黒, 1:白, 2:障害物][位置]） */
+  static final long[][] ZOBRIST = new long[3][LENGTH];
+  /** 白番のときに加える Zobrist ハッシュの乱数 */
+  static final long ZOBRIST_TURN;
+  /** 石の色を反転させたときのハッシュの差分（黒と白の乱数の排他的論理和） */
+  static final long[] ZOBRIST_FLIP = new long[LENGTH];
+
+  static {
+    var rand = new java.util.SplittableRandom(0x6F7468656C6C6FL);
+    for (var keys : ZOBRIST)
+      for (int k = 0; k < LENGTH; k++) keys[k] = rand.nextLong();
+    for (int k = 0; k < LENGTH; k++) ZOBRIST_FLIP[k] = ZOBRIST[0][k] ^ ZOBRIST[1][k];
+    ZOBRIST_TURN = rand.nextLong();
+  }
+
+  /**
+   * play/undo 用の手の表（[色][位置]、位置 LENGTH はパス）
+   * 探索中に Move を生成しないよう、あらかじめすべての手を作っておく
+   */
+  static final Move[][] MOVES = new Move[2][LENGTH + 1];
+
+  static {
+    for (int k = 0; k <= LENGTH; k++) {
+      MOVES[0][k] = new Move(k == LENGTH ? Move.PASS : k, BLACK);
+      MOVES[1][k] = new Move(k == LENGTH ? Move.PASS : k, WHITE);
+    }
+  }
+
+  /** undo 用スタックの大きさ（パスを含めた1局の最大手数） */
+  static final int MAX_PLY = 2 * LENGTH + 2;
+  /** undo 用スタック：各手で反転した石のマスク */
+  long[] undoFlips;
+  /** undo 用スタック：各手を打つ前の最後の手 */
+  Move[] undoMoves;
+  /** undo 用スタックの深さ */
+  int ply;
+
+  /**
+   * デフォルトコンストラクタ
+   * 空のボードを作成し、初期配置を設定する
+   */
+  public BitBoard() {
+    init();
+  }
+
+  /**
+   * 各マスクと最後の手を指定してボードを作成する
+   */
+  BitBoard(long black, long white, long block, Move move) {
+    this.black = black;
+    this.white = white;
+    this.block = block;
+    this.move = move;
+    this.hash = hash(black, 0) ^ hash(white, 1) ^ hash(block, 2);
+  }
+
+  /**
+   * マスクに含まれる各マスの Zobrist 乱数の排他的論理和を計算する
+   * @param mask 対象のマスク
+   * @param kind 乱数表の種類（0:黒, 1:白, 2:障害物）
+   */
+  static long hash(long mask, int kind) {
+    long h = 0;
+    for (long m = mask; m != 0; m &= m - 1)
+      h ^= ZOBRIST[kind][Long.numberOfTrailingZeros(m)];
+    return h;
+  }
+
+  /**
+   * 手番を含めた盤面の Zobrist ハッシュを取得する
+   * @return 置換表のキーとして使うハッシュ値
+   */
+  public long hash() {
+    return getTurn() == WHITE ? this.hash ^ ZOBRIST_TURN : this.hash;
+  }
+
+  /**
+   * 任意のボードの状態をコピーしてビットボードを作成する
+   * @param board コピー元のボード
+   * @return 同じ状態のビットボード
+   */
+  public static BitBoard of(Board board) {
+    var b = new BitBoard(0, 0, 0, board.getMove());
+    for (int k = 0; k < LENGTH; k++) b.set(k, board.get(k));
+    return b;
+  }
+
+  // ボードのコピーを作成する
+  public BitBoard clone() {
+    var b = new BitBoard(this.black, this.white, this.block, this.move);
+    b.legalBlack = this.legalBlack;
+    b.legalWhite = this.legalWhite;
+    b.legalValid = this.legalValid;
+    if (this.patterns != null) b.patterns = this.patterns.clone();
+    return b;
+  }
+
+  // 初期配置
+  void init() {
+    set(Move.parseIndex("c3"), BLACK);
+    set(Move.parseIndex("d4"), BLACK);
+    set(Move.parseIndex("d3"), WHITE);
+    set(Move.parseIndex("c4"), WHITE);
+  }
+
+  public Color get(int k) {
+    long m = 1L << k;
+    if ((this.black & m) != 0) return BLACK;
+    if ((this.white & m) != 0) return WHITE;
+    if ((this.block & m) != 0) return BLOCK;
+    return NONE;
+  }
+
+  public Move getMove() { return this.move; }
+
+  /**
+   * 現在の手番の色を取得する
+   * @return 手番の色（BLACK/WHITE）
+   */
+  public Color getTurn() {
+    return this.move.isNone() ? BLACK : this.move.getColor().flipped();
+  }
+
+  /**
+   * 指定した位置に色をセットする
+   * @param k セットする位置のインデックス
+   * @param color セットする色
+   */
+  public void set(int k, Color color) {
+    long m = 1L << k;
+    if ((this.black & m) != 0) this.hash ^= ZOBRIST[0][k];
+    if ((this.white & m) != 0) this.hash ^= ZOBRIST[1][k];
+    if ((this.block & m) != 0) this.hash ^= ZOBRIST[2][k];
+    this.black &= ~m;
+    this.white &= ~m;
+    this.block &= ~m;
+    this.legalValid = 0;
+    switch (color) {
+    case BLACK: this.black |= m; this.hash ^= ZOBRIST[0][k]; break;
+    case WHITE: this.white |= m; this.hash ^= ZOBRIST[1][k]; break;
+    case BLOCK: this.block |= m; this.hash ^= ZOBRIST[2][k]; break;
+    default: break;
+    }
+    if (this.patterns != null) MyPatternEval.indexes(this, this.patterns);
+  }
+
+  /**
+   * ボードの状態を比較する
+   * @param otherObj 比較対象のオブジェクト
+   * @return 両者のボード状態が同じ場合true
+   */
+  public boolean equals(Object otherObj) {
+    if (otherObj instanceof BitBoard) {
+      var other = (BitBoard) otherObj;
+      return this.black == other.black && this.white == other.white
+          && this.block == other.block;
+    }
+    return false;
+  }
+
+  public int hashCode() {
+    return Long.hashCode(this.black * 31 + this.white * 17 + this.block);
+  }
+
+  /**
+   * ボードの状態を文字列として返す
+   * @return フォーマットされたボード状態の文字列表現
+   */
+  public String toString() {
+    return MyBoardFormatter.format(this);
+  }
+
+  /**
+   * 指定された色の石のマスクを取得する
+   */
+  long mask(Color color) {
+    switch (color) {
+    case BLACK: return this.black;
+    case WHITE: return this.white;
+    case BLOCK: return this.block;
+    default: return FULL & ~(this.black | this.white | this.block);
+    }
+  }
+
+  /**
+   * 指定された色の石の数を数える
+   * @param color カウントする色
+   * @return その色の石の数
+   */
+  public int count(Color color) {
+    return Long.bitCount(mask(color));
+  }
+
+  /**
+   * ゲームが終了したかどうかを判定する
+   * 合法手のマスクは局面ごとに覚えておくので、同じ局面で繰り返し呼んでも再計算しない
+   * @return 黒白両方とも合法手がない場合true
+   */
+  public boolean isEnd() {
+    return legalMask(BLACK) == 0 && legalMask(WHITE) == 0;
+  }
+
+  /**
+   * 勝者の色を返す
+   * @return 勝者の色（BLACK/WHITE）。引き分けまたはゲーム継続中の場合はNONE
+   */
+  public Color winner() {
+    var v = score();
+    if (isEnd() == false || v == 0) return NONE;
+    return v > 0 ? BLACK : WHITE;
+  }
+
+  /**
+   * 反則負けの処理を行う
+   * @param color 反則を行ったプレイヤーの色
+   */
+  public void foul(Color color) {
+    var winner = color.flipped();
+    this.black = winner == BLACK ? FULL : 0;
+    this.white = winner == WHITE ? FULL : 0;
+    this.block = 0;
+    this.hash = hash(this.black, 0) ^ hash(this.white, 1);
+    this.legalValid = 0;
+    if (this.patterns != null) MyPatternEval.indexes(this, this.patterns);
+  }
+
+  /**
+   * 現在の盤面のスコアを計算する
+   * MyBoard.score() と同じく、片方の色の石が0個の場合は空きマスも勝者の石としてカウントする
+   * @return スコア（正：黒有利、負：白有利）
+   */
+  public int score() {
+    int bs = Long.bitCount(this.black);
+    int ws = Long.bitCount(this.white);
+    int score = bs - ws;
+
+    if (bs == 0 || ws == 0)
+      score += Integer.signum(score) * (LENGTH - bs - ws);
+
+    return score;
+  }
+
+  /**
+   * 指定された方向に1マスずらしたマスクを返す
+   * 方向の番号は 0:上、1:右上、2:右、3:右下、4:下、5:左下、6:左、7:左上（行番号の小さい側を上とする）
+   * @param x 元のマスク
+   * @param dir 方向（0-7）
+   * @return ずらしたマスク（盤外に出たビットは落とす）
+   */
+  static long shift(long x, int dir) {
+    switch (dir) {
+    case 0: return x >>> SIZE;
+    case 1: return (x >>> (SIZE - 1)) & NOT_LEFT;
+    case 2: return (x << 1) & NOT_LEFT;
+    case 3: return (x << (SIZE + 1)) & NOT_LEFT;
+    case 4: return (x << SIZE) & FULL;
+    case 5: return (x << (SIZE - 1)) & NOT_RIGHT;
+    case 6: return (x >>> 1) & NOT_RIGHT;
+    default: return (x >>> (SIZE + 1)) & NOT_RIGHT;
+    }
+  }
+
+  /**
+   * 自石と相手石のマスクから合法手のマスクを計算する
+   * @param own 手番側の石のマスク
+   * @param opp 相手側の石のマスク
+   * @param empty 空きマスのマスク
+   * @return 合法手の位置のマスク
+   */
+  static long legalMask(long own, long opp, long empty) {
+    long legal = 0;
+    for (int dir = 0; dir < 8; dir++) {
+      long t = shift(own, dir) & opp;
+      for (int i = 2; i < SIZE - 1; i++) t |= shift(t, dir) & opp;
+      legal |= shift(t, dir) & empty;
+    }
+    return legal;
+  }
+
+  /**
+   * 指定された位置に石を置いたときに反転する石のマスクを計算する（MyGeometry.STANDARD の半直線のマスクを使う）
+   * @param k 石を置く位置
+   * @param own 手番側の石のマスク
+   * @param opp 相手側の石のマスク
+   * @return 反転する石のマスク
+   */
+  static long flips(int k, long own, long opp) {
+    return MyGeometry.STANDARD.flips(k, own, opp);
+  }
+
+  /**
+   * 指定された色の合法手の位置のマスクを取得する
+   * 一度計算したマスクは石の配置が変わるまで覚えておく
+   * @param color プレイヤーの色
+   * @return 合法手のマスク（パスは含まない）
+   */
+  public long legalMask(Color color) {
+    long empty = FULL & ~(this.black | this.white | this.block);
+    if (color == BLACK) {
+      if ((this.legalValid & 1) == 0) {
+        this.legalBlack = legalMask(this.black, this.white, empty);
+        this.legalValid |= 1;
+      }
+      return this.legalBlack;
+    }
+    if ((this.legalValid & 2) == 0) {
+      this.legalWhite = legalMask(this.white, this.black, empty);
+      this.legalValid |= 2;
+    }
+    return this.legalWhite;
+  }
+
+  /**
+   * 指定された色の合法手をすべて見つける
+   * @param color プレイヤーの色
+   * @return 合法手のリスト（打てる手がない場合はパスのみ）
+   */
+  public List<Move> findLegalMoves(Color color) {
+    return findLegalIndexes(color).stream()
+        .map(k -> new Move(k, color)).toList();
+  }
+
+  /**
+   * 指定された色の合法手のインデックスを見つける
+   * @param color プレイヤーの色
+   * @return 合法手のインデックスのリスト（打てる手がない場合はパスを含む）
+   */
+  List<Integer> findLegalIndexes(Color color) {
+    var moves = findNoPassLegalIndexes(color);
+    if (moves.size() == 0) moves.add(Move.PASS);
+    return moves;
+  }
+
+  /**
+   * パスを除く合法手のインデックスを見つける
+   * @param color プレイヤーの色
+   * @return 実際に石を置ける位置のインデックスのリスト（昇順）
+   */
+  List<Integer> findNoPassLegalIndexes(Color color) {
+    var moves = new ArrayList<Integer>();
+    for (long m = legalMask(color); m != 0; m &= m - 1)
+      moves.add(Long.numberOfTrailingZeros(m));
+    return moves;
+  }
+
+  /**
+   * 指定された位置と色の手を取得する
+   * 事前に作った表から返すので新しい Move は生成しない
+   * @param k 位置（パスは Move.PASS）
+   * @param color 手の色（BLACK/WHITE）
+   */
+  static Move moveOf(int k, Color color) {
+    return MOVES[color == BLACK ? 0 : 1][k == Move.PASS ? LENGTH : k];
+  }
+
+  /**
+   * 盤面を直接更新して手を打つ
+   * placed と異なりボードを複製せず、反転した石を undo 用スタックに積む
+   * @param k 石を置く位置（パスは Move.PASS）
+   * @param color 手の色（BLACK/WHITE）
+   * @return 反転した石のマスク
+   */
+  public long play(int k, Color color) {
+    if (this.undoFlips == null) {
+      this.undoFlips = new long[MAX_PLY];
+      this.undoMoves = new Move[MAX_PLY];
+    }
+
+    long f = 0;
+    if (k != Move.PASS) {
+      f = color == BLACK
+          ? flips(k, this.black, this.white)
+          : flips(k, this.white, this.black);
+      apply(k, f, color);
+    }
+
+    this.undoFlips[this.ply] = f;
+    this.undoMoves[this.ply] = this.move;
+    this.ply++;
+    this.move = moveOf(k, color);
+    return f;
+  }
+
+  /**
+   * 直前の play を取り消して盤面を元に戻す
+   */
+  public void undo() {
+    this.ply--;
+    if (this.move.isPass() == false)
+      apply(this.move.getIndex(), this.undoFlips[this.ply], this.move.getColor());
+    this.move = this.undoMoves[this.ply];
+  }
+
+  /**
+   * 石の配置と反転を盤面とハッシュに反映する
+   * 排他的論理和で更新するので、同じ引数でもう一度呼ぶと元に戻る
+   * @param k 石を置く位置
+   * @param f 反転する石のマスク
+   * @param color 置く石の色
+   */
+  void apply(int k, long f, Color color) {
+    long m = 1L << k;
+    if (color == BLACK) {
+      this.black ^= f | m;
+      this.white ^= f;
+      this.hash ^= ZOBRIST[0][k];
+    } else {
+      this.white ^= f | m;
+      this.black ^= f;
+      this.hash ^= ZOBRIST[1][k];
+    }
+    for (long x = f; x != 0; x &= x - 1)
+      this.hash ^= ZOBRIST_FLIP[Long.numberOfTrailingZeros(x)];
+    this.legalValid = 0;
+    if (this.patterns != null)
+      MyPatternEval.update(this.patterns, k, f, color, (this.black & m) != 0 || (this.white & m) != 0);
+  }
+
+  /**
+   * 指定された手を打った後のボード状態を返す
+   * @param move 打つ手（位置と色）
+   * @return 新しいボード状態
+   */
+  public BitBoard placed(Move move) {
+    var b = clone();
+    b.move = move;
+
+    if (move.isPass() | move.isNone())
+      return b;
+
+    var k = move.getIndex();
+    var color = move.getColor();
+    long f = color == BLACK
+        ? flips(k, b.black, b.white)
+        : flips(k, b.white, b.black);
+    b.apply(k, f, color);
+
+    return b;
+  }
+
+  /**
+   * 盤面の色を反転したボードを返す
+   * 黒と白を入れ替えた新しいボードを作成する
+   * @return 色を反転した新しいボード
+   */
+  public BitBoard flipped() {
+    var b = new BitBoard(this.white, this.black, this.block, this.move.flipped());
+    b.legalBlack = this.legalWhite;
+    b.legalWhite = this.legalBlack;
+    b.legalValid = (this.legalValid >> 1 | this.legalValid << 1) & 3;
+    if (this.patterns != null) b.patterns = MyPatternEval.indexes(b, new int[this.patterns.length]);
+    return b;
+  }
+}
@@ -0,0 +1,117 @@
+package myplayer;
+
+import static ap25.Board.*;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import ap25.*;
+
+/**
+ * 探索の経路がノードごとにヒープを確保していないことを確かめる検査ツール
+ * MyBench のコーパスの局面に対して、BitBoard の play/undo による perft と、
+ * MyPlayer が使う MySearch の反復深化を予備実行した後にもう一度実行し、
+ * その間にこのスレッドが確保したバイト数を ThreadMXBean.getThreadAllocatedBytes で測る。
+ * どちらかが上限を超えたら終了コード1で終わる。
+ *
+ * 引数：
+ *   -depth n  perft と探索の深さ（デフォルト 6）
+ *   -limit n  予備実行の後に許す確保量の上限（バイト、デフォルト 4096）
+ */
+public class MyAllocationCheck {
+  /** 予備実行の回数 */
+  static final int WARMUP_ITERATIONS = 5;
+  /** 予備実行の後に許す確保量の上限のデフォルト値（バイト） */
+  static final long DEFAULT_LIMIT_BYTES = 4096;
+
+  /** 測定に使うスレッドの情報 */
+  static final com.sun.management.ThreadMXBean THREADS =
+      (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+  /**
+   * 測定する処理
+   */
+  interface Op {
+    /**
+     * コーパスのすべての局面に対して処理を1回ずつ行う
+     * @return 訪れたノード数
+     */
+    long run();
+  }
+
+  public static void main(String args[]) {
+    var depth = 6;
+    var limit = DEFAULT_LIMIT_BYTES;
+    for (int i = 0; i + 1 < args.length; i += 2) {
+      switch (args[i]) {
+      case "-depth": depth = Integer.parseInt(args[i + 1]); break;
+      case "-limit": limit = Long.parseLong(args[i + 1]); break;
+      default: throw new IllegalArgumentException("unknown option: " + args[i]);
+      }
+    }
+    if (THREADS.isThreadAllocatedMemorySupported() == false) {
+      System.out.println("thread allocated memory is not supported by this JVM");
+      System.exit(1);
+    }
+    THREADS.setThreadAllocatedMemoryEnabled(true);
+
+    var boards = new MyBench().bitBoards;
+    var ok = true;
+    ok &= check("BitBoard.play/undo perft", perft(boards, depth), limit);
+    ok &= check("MySearch.searchDepth", search(boards, depth), limit);
+    System.exit(ok ? 0 : 1);
+  }
+
+  /**
+   * BitBoard の play/undo で perft を数える処理を作る
+   */
+  static Op perft(BitBoard[] boards, int depth) {
+    var copies = new BitBoard[boards.length];
+    for (int i = 0; i < boards.length; i++) copies[i] = boards[i].clone();
+    var buffers = new int[depth + 1][LENGTH];
+    return () -> {
+      long nodes = 0;
+      for (var board : copies) nodes += MyPerft.perft(board, depth, buffers);
+      return nodes;
+    };
+  }
+
+  /**
+   * MyPlayer と同じ設定の MySearch で、深さ1から depth まで反復深化する処理を作る
+   * 結果が置換表の内容に左右されないよう、局面ごとに置換表を消去する
+   */
+  static Op search(BitBoard[] boards, int depth) {
+    var table = new TranspositionTable(1);
+    var searcher = new MySearch(MyPatternEval.loadDefault(), table, new AtomicBoolean(), depth);
+    var copies = new BitBoard[boards.length];
+    for (int i = 0; i < boards.length; i++) copies[i] = boards[i].clone();
+    return () -> {
+      long nodes = 0;
+      for (var board : copies) {
+        table.clear();
+        table.newSearch();
+        searcher.newSearch();
+        Move best = null;
+        for (int d = 1; d <= depth; d++) best = searcher.searchDepth(board, board.getTurn(), d, best);
+        nodes += searcher.nodes;
+      }
+      return nodes;
+    };
+  }
+
+  /**
+   * 予備実行の後に処理を1回実行し、確保したバイト数が上限以下かどうかを調べる
+   * @return 上限以下ならtrue
+   */
+  static boolean check(String name, Op op, long limit) {
+    for (int i = 0; i < WARMUP_ITERATIONS; i++) op.run();
+    long id = Thread.currentThread().getId();
+    long before = THREADS.getThreadAllocatedBytes(id);
+    long nodes = op.run();
+    long bytes = THREADS.getThreadAllocatedBytes(id) - before;
+    var ok = bytes <= limit;
+    System.out.printf("%-28s %12d nodes %10d bytes %10.4f bytes/node  %s\n",
+        name, nodes, bytes, (double) bytes / Math.max(1, nodes), ok ? "ok" : "NG (limit " + limit + ")");
+    return ok;
+  }
+}
@@ -0,0 +1,252 @@
+package myplayer;
+
+import static ap25.Board.*;
+import static ap25.Color.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import ap25.*;
+
+/**
+ * 盤面操作と探索の処理速度を測るベンチマーク
+ * 乱数の種から決まる中盤の局面の一覧（コーパス）に対して各処理を繰り返し実行し、
+ * 予備実行の後に1秒あたりの実行回数を複数回測って平均と標準偏差を表示する。
+ * 基準ファイルを指定すると、基準より遅くなった処理を報告して終了コード1で終わる。
+ *
+ * 引数：
+ *   -filter 文字列  名前にこの文字列を含む処理だけを測る
+ *   -save ファイル  結果を基準ファイルとして保存する
+ *   -baseline ファイル  基準ファイルと比較する
+ *   -tolerance 割合  基準からの低下をどこまで許すか（デフォルト 0.1）
+ */
+public class MyBench {
+  /** コーパスの局面数 */
+  static final int CORPUS_SIZE = 64;
+  /** コーパスを作る乱数の種 */
+  static final long CORPUS_SEED = 20250601L;
+  /** 予備実行の回数 */
+  static final int WARMUP_ITERATIONS = 3;
+  /** 測定の回数 */
+  static final int MEASUREMENT_ITERATIONS = 5;
+  /** 1回の予備実行・測定の時間（ナノ秒） */
+  static final long ITERATION_NANOS = 500_000_000L;
+
+  /**
+   * 測定する処理
+   */
+  interface Op {
+    /**
+     * コーパスの i 番目の局面に対して処理を1回行う
+     * @return 最適化で処理が消されないようにするための値
+     */
+    long run(int i);
+  }
+
+  /** 処理の結果を捨てずに溜めておく変数（JIT による処理の削除を防ぐ） */
+  static long sink;
+
+  /** MyBoard のコーパス */
+  MyBoard[] boards = new MyBoard[CORPUS_SIZE];
+  /** BitBoard のコーパス */
+  BitBoard[] bitBoards = new BitBoard[CORPUS_SIZE];
+  /** 各局面の直前の局面（think の測定で setBoard に渡す） */
+  BitBoard[] parents = new BitBoard[CORPUS_SIZE];
+  /** 各局面の手番側の合法手の1つ */
+  Move[] moves = new Move[CORPUS_SIZE];
+
+  public static void main(String args[]) throws IOException {
+    String filter = "", save = null, baseline = null;
+    double tolerance = 0.1;
+    for (int i = 0; i + 1 < args.length; i += 2) {
+      switch (args[i]) {
+      case "-filter": filter = args[i + 1]; break;
+      case "-save": save = args[i + 1]; break;
+      case "-baseline": baseline = args[i + 1]; break;
+      case "-tolerance": tolerance = Double.parseDouble(args[i + 1]); break;
+      default: throw new IllegalArgumentException("unknown option: " + args[i]);
+      }
+    }
+
+    var bench = new MyBench();
+    var results = bench.run(filter);
+
+    if (save != null) save(Path.of(save), results);
+    if (baseline != null && compare(load(Path.of(baseline)), results, tolerance) > 0)
+      System.exit(1);
+  }
+
+  /**
+   * コーパスを作成する
+   * 初期配置から乱数で打ち進め、空きマスが14〜24の終局していない局面を集める
+   */
+  MyBench() {
+    var rand = new Random(CORPUS_SEED);
+    var buf = new int[LENGTH];
+    for (int i = 0; i < CORPUS_SIZE; ) {
+      var empties = 14 + rand.nextInt(11);
+      var board = new BitBoard();
+      BitBoard parent = null;
+      while (board.isEnd() == false && board.count(NONE) > empties) {
+        var turn = board.getTurn();
+        int n = board.findLegalIndexes(turn, buf);
+        parent = board;
+        board = board.placed(new Move(buf[rand.nextInt(n)], turn));
+      }
+      if (parent == null || board.isEnd()) continue;
+
+      var turn = board.getTurn();
+      int n = board.findLegalIndexes(turn, buf);
+      this.bitBoards[i] = board;
+      this.parents[i] = parent;
+      this.boards[i] = toMyBoard(board);
+      this.moves[i] = new Move(buf[rand.nextInt(n)], turn);
+      i++;
+    }
+  }
+
+  /**
+   * BitBoard と同じ状態の MyBoard を作る
+   */
+  static MyBoard toMyBoard(Board board) {
+    var b = new MyBoard();
+    for (int k = 0; k < LENGTH; k++) b.set(k, board.get(k));
+    b.move = board.getMove();
+    return b;
+  }
+
+  /**
+   * 名前に filter を含むすべての処理を測定する
+   * @return 処理の名前と1秒あたりの実行回数の平均
+   */
+  Map<String, Double> run(String filter) {
+    var ops = new LinkedHashMap<String, Op>();
+    var eval = new MyEval();
+
+    ops.put("MyBoard.findLegalMoves", i -> boards[i].findLegalMoves(boards[i].getTurn()).size());
+    ops.put("MyBoard.placed", i -> boards[i].placed(moves[i]).count(BLACK));
+    ops.put("MyBoard.isEnd", i -> boards[i].isEnd() ? 1 : 0);
+    ops.put("MyBoard.score", i -> boards[i].score());
+    ops.put("MyBoard.flipped", i -> boards[i].flipped().count(BLACK));
+    ops.put("BitBoard.findLegalMoves", i -> bitBoards[i].findLegalMoves(bitBoards[i].getTurn()).size());
+    ops.put("BitBoard.placed", i -> bitBoards[i].placed(moves[i]).count(BLACK));
+    ops.put("BitBoard.isEnd", i -> bitBoards[i].isEnd() ? 1 : 0);
+    ops.put("BitBoard.score", i -> bitBoards[i].score());
+    ops.put("BitBoard.flipped", i -> bitBoards[i].flipped().count(BLACK));
+    ops.put("MyEval.value(MyBoard)", i -> (long) eval.value(boards[i]));
+    ops.put("MyEval.value(BitBoard)", i -> (long) eval.value(bitBoards[i]));
+    var patternEval = new MyPatternEval();
+    var prepared = new BitBoard[CORPUS_SIZE];
+    for (int i = 0; i < CORPUS_SIZE; i++) {
+      prepared[i] = bitBoards[i].clone();
+      patternEval.prepare(prepared[i]);
+    }
+    ops.put("MyPatternEval.value(BitBoard)", i -> (long) patternEval.value(prepared[i]));
+    for (int depth : new int[] { 2, 4, 6 })
+      ops.put("MyPlayer.think(depth=" + depth + ")", think(depth));
+
+    var results = new LinkedHashMap<String, Double>();
+    System.out.printf("%-32s %5s %14s %12s  %s\n", "Benchmark", "Cnt", "Score", "Error", "Units");
+    for (var e : ops.entrySet()) {
+      if (e.getKey().contains(filter) == false) continue;
+      var scores = measure(e.getValue());
+      var mean = scores.stream().mapToDouble(x -> x).average().orElse(0);
+      var sd = Math.sqrt(scores.stream().mapToDouble(x -> (x - mean) * (x - mean)).sum()
+          / Math.max(1, scores.size() - 1));
+      System.out.printf("%-32s %5d %14.1f %12.1f  ops/s\n", e.getKey(), scores.size(), mean, sd);
+      results.put(e.getKey(), mean);
+    }
+    return results;
+  }
+
+  /**
+   * 指定された深さの MyPlayer で1手考える処理を作る
+   * 置換表の内容で結果が変わらないよう、毎回置換表を消去してから考える
+   */
+  Op think(int depth) {
+    var players = new MyPlayer[] {
+      new MyPlayer(MyPlayer.MY_NAME, BLACK, new MyEval(), depth, 1),
+      new MyPlayer(MyPlayer.MY_NAME, WHITE, new MyEval(), depth, 1),
+    };
+    for (var player : players) {
+      player.setEndgameEmpties(0);
+      player.setSeed(0);
+    }
+    return i -> {
+      var board = this.bitBoards[i];
+      var player = players[board.getTurn() == BLACK ? 0 : 1];
+      player.table.clear();
+      player.setBoard(this.parents[i]);
+      return player.think(board).getIndex();
+    };
+  }
+
+  /**
+   * 処理を予備実行した後、1秒あたりの実行回数を測定回数分測る
+   */
+  static List<Double> measure(Op op) {
+    for (int i = 0; i < WARMUP_ITERATIONS; i++) iteration(op);
+    var scores = new ArrayList<Double>();
+    for (int i = 0; i < MEASUREMENT_ITERATIONS; i++) scores.add(iteration(op));
+    return scores;
+  }
+
+  /**
+   * 一定時間、コーパスの局面を順に処理し続け、1秒あたりの実行回数を返す
+   */
+  static double iteration(Op op) {
+    long count = 0;
+    long t0 = System.nanoTime();
+    long elapsed;
+    do {
+      for (int i = 0; i < CORPUS_SIZE; i++) sink += op.run(i);
+      count += CORPUS_SIZE;
+      elapsed = System.nanoTime() - t0;
+    } while (elapsed < ITERATION_NANOS);
+    return count * 1e9 / elapsed;
+  }
+
+  /**
+   * 結果を「名前 タブ 1秒あたりの実行回数」の形式で保存する
+   */
+  static void save(Path path, Map<String, Double> results) throws IOException {
+    var lines = new ArrayList<String>();
+    results.forEach((name, score) -> lines.add(name + "\t" + score));
+    Files.write(path, lines);
+  }
+
+  /**
+   * save で保存した基準ファイルを読み込む
+   */
+  static Map<String, Double> load(Path path) throws IOException {
+    var results = new LinkedHashMap<String, Double>();
+    for (var line : Files.readAllLines(path)) {
+      var fields = line.split("\t");
+      if (fields.length == 2) results.put(fields[0], Double.parseDouble(fields[1]));
+    }
+    return results;
+  }
+
+  /**
+   * 基準と比べて遅くなった処理を表示する
+   * @return 許容範囲を超えて遅くなった処理の数
+   */
+  static int compare(Map<String, Double> baseline, Map<String, Double> results, double tolerance) {
+    int regressions = 0;
+    for (var e : results.entrySet()) {
+      var base = baseline.get(e.getKey());
+      if (base == null) continue;
+      var ratio = e.getValue() / base;
+      var regressed = ratio < 1 - tolerance;
+      if (regressed) regressions++;
+      System.out.printf("%-32s %6.2fx%s\n", e.getKey(), ratio, regressed ? "  REGRESSION" : "");
+    }
+    return regressions;
+  }
+}
@@ -5,9 +5,6 @@ import static ap25.Color.*;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
-import java.util.function.Function;
-import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
@@ -16,19 +13,40 @@ import ap25.*;
 /**
  * オセロのボード状態を管理するクラス
  * ボードの状態、石の配置、合法手の判定などの機能を提供する
+ * 盤面の大きさと障害物の配置は MyGeometry で指定でき、Color の配列を1マスずつ調べる基準の実装として使う
  */
 public class MyBoard implements Board, Cloneable {
+  /** 盤面の形 */
+  MyGeometry geometry;
   /** オセロボードの状態を表す配列 */
   Color board[];
   /** 最後に打たれた手 */
   Move move = Move.ofPass(NONE);
+  /** 各色のマスの数（Color の序数で引く）。set で石を置くたびに更新する */
+  int counts[] = new int[Color.values().length];
+  /** 計算済みの黒の合法手のマスク */
+  long legalBlack;
+  /** 計算済みの白の合法手のマスク */
+  long legalWhite;
+  /** 合法手のマスクのうち計算済みのもの（ビット0:黒、ビット1:白）。石の配置が変わると0に戻す */
+  int legalValid;
 
   /**
    * デフォルトコンストラクタ
    * 空のボードを作成し、初期配置を設定する
    */
   public MyBoard() {
-    this.board = Stream.generate(() -> NONE).limit(LENGTH).toArray(Color[]::new);
+    this(MyGeometry.STANDARD);
+  }
+
+  /**
+   * 指定された形の空のボードを作成し、障害物と初期配置を設定する
+   * @param geometry 盤面の形
+   */
+  public MyBoard(MyGeometry geometry) {
+    this.geometry = geometry;
+    this.board = Stream.generate(() -> NONE).limit(geometry.length).toArray(Color[]::new);
+    this.counts[NONE.ordinal()] = geometry.length;
     init();
   }
 
@@ -38,21 +56,37 @@ public class MyBoard implements Board, Cloneable {
    * @param move 最後に打たれた手
    */
   MyBoard(Color board[], Move move) {
+    this.geometry = MyGeometry.of((int) Math.sqrt(board.length));
     this.board = Arrays.copyOf(board, board.length);
     this.move = move;
+    for (var c : this.board) this.counts[c.ordinal()]++;
+  }
+
+  /**
+   * 石の数と合法手の計算結果も含めてボードをコピーする
+   */
+  MyBoard(MyBoard other) {
+    this.geometry = other.geometry;
+    this.board = Arrays.copyOf(other.board, other.board.length);
+    this.move = other.move;
+    this.counts = Arrays.copyOf(other.counts, other.counts.length);
+    this.legalBlack = other.legalBlack;
+    this.legalWhite = other.legalWhite;
+    this.legalValid = other.legalValid;
   }
 
   // myboardのコピーを作成する
   public MyBoard clone() {
-    return new MyBoard(this.board, this.move);
+    return new MyBoard(this);
   }
 
-  // 初期配置
+  // 障害物と初期配置
   void init() {
-    set(Move.parseIndex("c3"), BLACK);
-    set(Move.parseIndex("d4"), BLACK);
-    set(Move.parseIndex("d3"), WHITE);
-    set(Move.parseIndex("c4"), WHITE);
+    for (int k = 0; k < this.board.length; k++) {
+      if ((this.geometry.blocks >>> k & 1) != 0) set(k, BLOCK);
+      if ((this.geometry.initialBlack >>> k & 1) != 0) set(k, BLACK);
+      if ((this.geometry.initialWhite >>> k & 1) != 0) set(k, WHITE);
+    }
   }
 
   public Color get(int k) { return this.board[k]; }
@@ -72,7 +106,10 @@ public class MyBoard implements Board, Cloneable {
    * @param color セットする色
    */
   public void set(int k, Color color) {
+    this.counts[this.board[k].ordinal()]--;
+    this.counts[color.ordinal()]++;
     this.board[k] = color;
+    this.legalValid = 0;
   }
 
   /**
@@ -94,7 +131,7 @@ public class MyBoard implements Board, Cloneable {
    * @return フォーマットされたボード状態の文字列表現
    */
   public String toString() {
-    return MyBoardFormatter.format(this);
+    return MyBoardFormatter.format(this, this.geometry);
   }
 
   /**
@@ -103,17 +140,16 @@ public class MyBoard implements Board, Cloneable {
    * @return その色の石の数
    */
   public int count(Color color) {
-    return countAll().getOrDefault(color, 0L).intValue();
+    return this.counts[color.ordinal()];
   }
 
   /**
    * ゲームが終了したかどうかを判定する
+   * 合法手は局面ごとに覚えておくので、同じ局面で繰り返し呼んでも再計算しない
    * @return 黒白両方とも合法手がない場合true
    */
   public boolean isEnd() {
-    var lbs = findNoPassLegalIndexes(BLACK);
-    var lws = findNoPassLegalIndexes(WHITE);
-    return lbs.size() == 0 && lws.size() == 0;
+    return legalMask(BLACK) == 0 && legalMask(WHITE) == 0;
   }
 
   /**
@@ -132,7 +168,7 @@ public class MyBoard implements Board, Cloneable {
    */
   public void foul(Color color) {
     var winner = color.flipped();
-    IntStream.range(0, LENGTH).forEach(k -> this.board[k] = winner);
+    IntStream.range(0, this.board.length).forEach(k -> set(k, winner));
   }
 
   /**
@@ -142,11 +178,10 @@ public class MyBoard implements Board, Cloneable {
    * @return スコア（正：黒有利、負：白有利）
    */
   public int score() {
-    var cs = countAll(); // 各色の石の数をカウント
-    var bs = cs.getOrDefault(BLACK, 0L);
-    var ws = cs.getOrDefault(WHITE, 0L);
-    var ns = LENGTH - bs - ws; // 空きマスの数
-    int score = (int) (bs - ws);
+    var bs = count(BLACK);
+    var ws = count(WHITE);
+    var ns = this.board.length - bs - ws; // 空きマスの数
+    int score = bs - ws;
 
     if (bs == 0 || ws == 0)
         score += Integer.signum(score) * ns;
@@ -154,15 +189,6 @@ public class MyBoard implements Board, Cloneable {
     return score;
   }
 
-  /**
-   * ボード上の各色の石の数をカウントする
-   * @return 色をキー、その色の石の数を値とするマップ
-   */
-  Map<Color, Long> countAll() {
-    return Arrays.stream(this.board).collect(
-        Collectors.groupingBy(Function.identity(), Collectors.counting()));
-  }
-
   /**
    * 指定された色の合法手をすべて見つける
    * @param color プレイヤーの色
@@ -191,47 +217,60 @@ public class MyBoard implements Board, Cloneable {
    */
   List<Integer> findNoPassLegalIndexes(Color color) {
     var moves = new ArrayList<Integer>();
-    for (int k = 0; k < LENGTH; k++) {
-      var c = this.board[k];
-      if (c != NONE) continue;
-      for (var line : lines(k)) {
-        var outflanking = outflanked(line, color);
-        if (outflanking.size() > 0) moves.add(k);
-      }
-    }
+    for (long m = legalMask(color); m != 0; m &= m - 1)
+      moves.add(Long.numberOfTrailingZeros(m));
     return moves;
   }
 
   /**
-   * 指定された位置から8方向の座標リストを取得する
-   * @param k 基準となる位置のインデックス
-   * @return 8方向それぞれの座標リスト
+   * 指定された色の合法手の位置のマスクを取得する
+   * 一度計算したマスクは石の配置が変わるまで覚えておくので、同じ局面で繰り返し呼んでも再計算しない
+   * @param color プレイヤーの色
+   * @return 合法手のマスク（パスは含まない）
+   */
+  public long legalMask(Color color) {
+    int bit = color == BLACK ? 1 : 2;
+    if ((this.legalValid & bit) == 0) {
+      long mask = computeLegalMask(color);
+      if (color == BLACK) this.legalBlack = mask;
+      else this.legalWhite = mask;
+      this.legalValid |= bit;
+    }
+    return color == BLACK ? this.legalBlack : this.legalWhite;
+  }
+
+  /**
+   * 盤面を調べてパスを除く合法手のマスクを計算する
+   * @param color プレイヤーの色
+   * @return 実際に石を置ける位置のマスク
    */
-  List<List<Integer>> lines(int k) {
-    var lines = new ArrayList<List<Integer>>();
-    for (int dir = 0; dir < 8; dir++) {
-      var line = Move.line(k, dir);
-      lines.add(line);
+  long computeLegalMask(Color color) {
+    long moves = 0;
+    for (int k = 0; k < this.board.length; k++) {
+      if (this.board[k] != NONE) continue;
+      for (var ray : this.geometry.rays[k]) {
+        if (outflanked(ray, color) > 0) {
+          moves |= 1L << k;  // 複数方向で挟める場合も1回だけ追加する
+          break;
+        }
+      }
     }
-    return lines;
+    return moves;
   }
 
   /**
-   * 指定された方向に対して、挟める石のリストを返す
-   * @param line 調べる方向の座標リスト
+   * 指定された方向に対して、挟める石の数を返す
+   * @param ray 調べる方向のマスの位置（MyGeometry.rays の要素）
    * @param color 石の色
-   * @return 挟める石の位置とその色のリスト
+   * @return 挟める石の数（挟めない場合は0）。挟める石は ray の先頭からこの数だけ並んでいる
    */
-  List<Move> outflanked(List<Integer> line, Color color) {
-    if (line.size() <= 1) return new ArrayList<Move>();
-    var flippables = new ArrayList<Move>();
-    for (int k: line) {
-      var c = get(k);
-      if (c == NONE || c == BLOCK) break;
-      if (c == color) return flippables;
-      flippables.add(new Move(k, color));
+  int outflanked(int[] ray, Color color) {
+    for (int i = 0; i < ray.length; i++) {
+      var c = this.board[ray[i]];
+      if (c == NONE || c == BLOCK) return 0;
+      if (c == color) return i;
     }
-    return new ArrayList<Move>();
+    return 0;
   }
 
   /**
@@ -248,11 +287,9 @@ public class MyBoard implements Board, Cloneable {
 
     var k = move.getIndex();
     var color = move.getColor();
-    var lines = b.lines(k);
-    for (var line: lines) {
-      for (var p: outflanked(line, color)) {
-        b.board[p.getIndex()] = color;
-      }
+    for (var ray : b.geometry.rays[k]) {
+      int n = outflanked(ray, color);
+      for (int i = 0; i < n; i++) b.set(ray[i], color);
     }
     b.set(k, color);
 
@@ -267,7 +304,7 @@ public class MyBoard implements Board, Cloneable {
    */
   public MyBoard flipped() {
     var b = clone();
-    IntStream.range(0, LENGTH).forEach(k -> b.board[k] = b.board[k].flipped());
+    IntStream.range(0, b.board.length).forEach(k -> b.set(k, b.board[k].flipped()));
     b.move = this.move.flipped();
     return b;
   }
@@ -0,0 +1,160 @@
+package myplayer;
+
+import static ap25.Board.*;
+import static ap25.Color.*;
+
+import java.util.Random;
+
+import ap25.*;
+
+/**
+ * BitBoard と MyVariantBoard を MyBoard と突き合わせる差分検査ツール
+ * 乱数で選んだ手で対局を進め、1手ごとに両方の盤面の状態（各マス、石数、合法手、終局判定、スコア、勝者、
+ * 文字列表現）が一致することを確かめる。一部の対局では初期配置以外のマスに障害物を置き、
+ * 途中で flipped() した盤面や、最後に foul() した盤面も比べる。
+ * BitBoard は標準の大きさで、MyVariantBoard は MyGeometry で一辺を 4・6・8 から選び、
+ * 初期配置以外のマスに一辺の数未満の障害物を置いた形で比べる。
+ * 食い違いがあれば最初の1件を表示して終了コード1で終わる。
+ *
+ * 引数：
+ *   -games n  BitBoard の対局数（デフォルト 1500）
+ *   -variantGames n  MyVariantBoard の対局数（デフォルト 3000）
+ *   -seed n  乱数の種（デフォルト 0）
+ */
+public class MyBoardCheck {
+  /** 障害物を置く対局の割合（この数に1局） */
+  static final int BLOCKED_GAME_INTERVAL = 3;
+  /** 障害物を置く対局での障害物の数の上限 */
+  static final int MAX_BLOCKS = 4;
+  /** MyVariantBoard の対局で使う盤面の一辺のマス数 */
+  static final int[] VARIANT_SIZES = { 4, 6, 8 };
+
+  /** 比べた局面の数 */
+  long positions;
+  /** 最初の食い違い（なければnull） */
+  String failure;
+
+  public static void main(String args[]) {
+    var games = 1500;
+    var variantGames = 3000;
+    var seed = 0L;
+    for (int i = 0; i + 1 < args.length; i += 2) {
+      switch (args[i]) {
+      case "-games": games = Integer.parseInt(args[i + 1]); break;
+      case "-variantGames": variantGames = Integer.parseInt(args[i + 1]); break;
+      case "-seed": seed = Long.parseLong(args[i + 1]); break;
+      default: throw new IllegalArgumentException("unknown option: " + args[i]);
+      }
+    }
+
+    var check = new MyBoardCheck();
+    var rand = new Random(seed);
+    var ok = check.run(rand, games) && check.runVariants(rand, variantGames);
+    System.out.printf("%d games, %d variant games, %d positions: %s\n",
+        games, variantGames, check.positions, ok ? "ok" : "NG");
+    if (ok == false) {
+      System.out.println(check.failure);
+      System.exit(1);
+    }
+  }
+
+  /**
+   * 標準の大きさの盤面で、指定された数の対局で BitBoard を突き合わせる
+   * @return すべて一致すればtrue
+   */
+  boolean run(Random rand, int games) {
+    for (int g = 0; g < games; g++) {
+      var myInitial = new MyBoard();
+      var bitInitial = new BitBoard();
+      if (g % BLOCKED_GAME_INTERVAL == 0) {
+        for (int i = rand.nextInt(MAX_BLOCKS + 1); i > 0; i--) {
+          int k = rand.nextInt(LENGTH);
+          if (myInitial.get(k) != NONE) continue;
+          myInitial.set(k, BLOCK);
+          bitInitial.set(k, BLOCK);
+        }
+      }
+      if (play(rand, myInitial, bitInitial, MyGeometry.STANDARD, g) == false) return false;
+    }
+    return true;
+  }
+
+  /**
+   * 大きさと障害物の配置をランダムに選んだ形で、指定された数の対局で MyVariantBoard を突き合わせる
+   * @return すべて一致すればtrue
+   */
+  boolean runVariants(Random rand, int games) {
+    for (int g = 0; g < games; g++) {
+      int size = VARIANT_SIZES[rand.nextInt(VARIANT_SIZES.length)];
+      var geometry = MyGeometry.random(rand, size, rand.nextInt(size));
+      if (play(rand, new MyBoard(geometry), new MyVariantBoard(geometry), geometry, g) == false) return false;
+    }
+    return true;
+  }
+
+  /**
+   * 1局を終局まで進めながら2つの盤面を比べる
+   * @param my 基準の MyBoard
+   * @param other 比べる盤面（my と同じ局面）
+   * @param geometry 盤面の形
+   * @param game 対局の番号（食い違いの報告に使う）
+   * @return すべて一致すればtrue
+   */
+  boolean play(Random rand, Board my, Board other, MyGeometry geometry, int game) {
+    if (compare(my, other, geometry, game) == false) return false;
+
+    while (my.isEnd() == false) {
+      var moves = my.findLegalMoves(my.getTurn());
+      var move = moves.get(rand.nextInt(moves.size()));
+      if (other.isLegalMove(move) == false) return fail(game, "isLegalMove " + move, my, other);
+      my = my.placed(move);
+      other = other.placed(move);
+      if (compare(my, other, geometry, game) == false) return false;
+      if (rand.nextInt(16) == 0 && compare(my.flipped(), other.flipped(), geometry, game) == false) return false;
+    }
+
+    if (rand.nextBoolean()) {
+      var color = rand.nextBoolean() ? BLACK : WHITE;
+      my.foul(color);
+      other.foul(color);
+      if (compare(my, other, geometry, game) == false) return false;
+    }
+    return true;
+  }
+
+  /**
+   * 2つの盤面の状態を比べる
+   * @param geometry 盤面の形
+   * @param game 対局の番号（食い違いの報告に使う）
+   * @return 一致すればtrue
+   */
+  boolean compare(Board my, Board other, MyGeometry geometry, int game) {
+    this.positions++;
+    for (int k = 0; k < geometry.length; k++)
+      if (my.get(k) != other.get(k)) return fail(game, "cell " + geometry.toIndexString(k), my, other);
+    if (my.getMove().equals(other.getMove()) == false) return fail(game, "move", my, other);
+    if (my.getTurn() != other.getTurn()) return fail(game, "turn", my, other);
+    for (var color : Color.values())
+      if (my.count(color) != other.count(color)) return fail(game, "count " + color, my, other);
+    for (var color : new Color[] { BLACK, WHITE }) {
+      if (my.findLegalMoves(color).equals(other.findLegalMoves(color)) == false)
+        return fail(game, "legal moves " + color, my, other);
+      if (my.legalMask(color) != other.legalMask(color)) return fail(game, "legal mask " + color, my, other);
+    }
+    if (my.isEnd() != other.isEnd()) return fail(game, "isEnd", my, other);
+    if (my.score() != other.score()) return fail(game, "score", my, other);
+    if (my.winner() != other.winner()) return fail(game, "winner", my, other);
+    if (my.toString().equals(other.toString()) == false) return fail(game, "toString", my, other);
+    return true;
+  }
+
+  /**
+   * 食い違いを記録する
+   * @return 常にfalse
+   */
+  boolean fail(int game, String what, Board my, Board other) {
+    this.failure = String.format("game %d: %s differs\nMyBoard:\n%s\n%s:\n%s",
+        game, what, my, other.getClass().getSimpleName(), other);
+    return false;
+  }
+}
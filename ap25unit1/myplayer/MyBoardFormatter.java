@@ -1,6 +1,5 @@
 package myplayer;
 
-import static ap25.Board.*;
 import static ap25.Color.*;
 
 import java.util.List;
@@ -18,22 +17,33 @@ public class MyBoardFormatter {
    * @param board 整形対象の盤面
    * @return 整形された盤面の文字列
    */
-  public static String format(MyBoard board) {
+  public static String format(Board board) {
+    return format(board, MyGeometry.STANDARD);
+  }
+
+  /**
+   * 指定された形の盤面を文字列として整形するメソッド
+   * @param board 整形対象の盤面
+   * @param geometry 盤面の形（一辺のマス数と位置の番号の付け方に使う）
+   * @return 整形された盤面の文字列
+   */
+  public static String format(Board board, MyGeometry geometry) {
+    int size = geometry.size;
     var turn = board.getTurn();  // 現在の手番
     var move = board.getMove();  // 最後の手
-    var blacks = board.findNoPassLegalIndexes(BLACK);  // 黒の合法手
-    var whites = board.findNoPassLegalIndexes(WHITE);  // 白の合法手
+    var blacks = legalIndexes(board, BLACK);  // 黒の合法手
+    var whites = legalIndexes(board, WHITE);  // 白の合法手
     var legals = Map.of(BLACK, blacks, WHITE, whites);  // 色ごとの合法手をマップ化
 
     // 列番号（a-h）を表示
     var buf = new StringBuilder("  ");
-    for (int k = 0; k < SIZE; k++) buf.append(Move.toColString(k));
+    for (int k = 0; k < size; k++) buf.append(Move.toColString(k));
     buf.append("\n");
 
     // 盤面の各マスを表示
-    for (int k = 0; k < SIZE * SIZE; k++) {
-      int col = k % SIZE;  // 列（0-7）
-      int row = k / SIZE;  // 行（0-7）
+    for (int k = 0; k < size * size; k++) {
+      int col = k % size;  // 列（0-7）
+      int row = k / size;  // 行（0-7）
 
       // 行番号（1-8）を表示
       if (col == 0) buf.append((row + 1) + "|");
@@ -55,12 +65,12 @@ public class MyBoardFormatter {
       }
 
       // 行の終わりで追加情報を表示
-      if (col == SIZE - 1) {
+      if (col == size - 1) {
         buf.append("| ");
         if (row == 0 && move != null) {
-          buf.append(move);  // 1行目に最後の手を表示
+          buf.append(geometry.toIndexString(move.getIndex()));  // 1行目に最後の手を表示
         } else if (row == 1) {
-          buf.append(turn + ": " + toString(legals.get(turn)));  // 2行目に現在の手番と合法手を表示
+          buf.append(turn + ": " + toString(legals.get(turn), geometry));  // 2行目に現在の手番と合法手を表示
         }
         buf.append("\n");
       }
@@ -70,12 +80,24 @@ public class MyBoardFormatter {
     return buf.toString();
   }
 
+  /**
+   * パスを除く合法手のインデックスを取得
+   * @param board 対象の盤面
+   * @param color 手番の色
+   * @return 石を置ける位置のインデックスのリスト
+   */
+  static List<Integer> legalIndexes(Board board, Color color) {
+    return board.findLegalMoves(color).stream()
+        .filter(m -> m.isPass() == false).map(m -> m.getIndex()).toList();
+  }
+
   /**
    * 合法手のリストを文字列のリストに変換
    * @param moves 合法手のインデックスリスト
+   * @param geometry 盤面の形
    * @return 合法手の文字列表現のリスト
    */
-  static List<String> toString(List<Integer> moves) {
-    return moves.stream().map(k -> Move.toIndexString(k)).toList();
+  static List<String> toString(List<Integer> moves, MyGeometry geometry) {
+    return moves.stream().map(k -> geometry.toIndexString(k)).toList();
   }
 }
@@ -0,0 +1,92 @@
+package myplayer;
+
+import static ap25.Color.*;
+
+import ap25.*;
+
+/**
+ * 対局の持ち時間を System.nanoTime() で計る時計
+ * 黒と白それぞれの使った時間をナノ秒で積算し、手番の残り時間から1手の締め切り（絶対時刻）を求める。
+ * 1手ごとに切り上げたりはしないので、速いプレイヤーでも実際に使った時間だけが減る。
+ */
+public class MyClock {
+  /** 1ゲームの持ち時間（ナノ秒） */
+  final long limitNanos;
+  /** 使った時間（[0:黒, 1:白]、ナノ秒） */
+  final long[] usedNanos = new long[2];
+
+  /**
+   * 締め切りを受け取るプレイヤー
+   * MyGame は think の前に、手番の残り時間を使い切る時刻を渡す。
+   * その時刻を過ぎても think が戻らなければ、時間切れの反則負けとして think のスレッドに割り込む。
+   */
+  public interface DeadlineAware {
+    /**
+     * 次の think の締め切りを設定する
+     * @param deadline 締め切りの時刻（System.nanoTime() の値）
+     */
+    void setDeadline(long deadline);
+  }
+
+  /**
+   * コンストラクタ
+   * @param limitSeconds 1ゲームの持ち時間（秒）
+   */
+  public MyClock(float limitSeconds) {
+    this.limitNanos = (long) (limitSeconds * 1e9);
+  }
+
+  /**
+   * 新しいゲームのために使った時間を0に戻す
+   */
+  public void reset() {
+    this.usedNanos[0] = this.usedNanos[1] = 0;
+  }
+
+  /**
+   * 使った時間を加える
+   * @param color 手番の色
+   * @param nanos think にかかった時間（ナノ秒）
+   */
+  public void charge(Color color, long nanos) {
+    this.usedNanos[color == BLACK ? 0 : 1] += nanos;
+  }
+
+  /**
+   * 使った時間（ナノ秒）を取得する
+   */
+  public long usedNanos(Color color) {
+    return this.usedNanos[color == BLACK ? 0 : 1];
+  }
+
+  /**
+   * 使った時間（秒）を取得する
+   */
+  public float seconds(Color color) {
+    return usedNanos(color) / 1e9f;
+  }
+
+  /**
+   * 残り時間（ナノ秒）を取得する。使い切っていれば0
+   */
+  public long remainingNanos(Color color) {
+    return Math.max(0, this.limitNanos - usedNanos(color));
+  }
+
+  /**
+   * 持ち時間を超えたかどうか
+   */
+  public boolean isOver(Color color) {
+    return usedNanos(color) > this.limitNanos;
+  }
+
+  /**
+   * 今から考え始める手の締め切りを求める
+   * @param color 手番の色
+   * @param now 考え始める時刻（System.nanoTime() の値）
+   * @return 残り時間を使い切る時刻
+   */
+  public long deadline(Color color, long now) {
+    return now + remainingNanos(color);
+  }
+}
@@ -0,0 +1,347 @@
+package myplayer;
+
+import static ap25.Board.*;
+import static ap25.Color.*;
+
+import java.util.Random;
+
+import ap25.*;
+
+/**
+ * 終盤の完全読みを行うクラス。
+ * 手番側と相手側の石のマスクだけを使うネガマックス法（α-β法）で、
+ * 終局までのすべての手順を読み切って最終スコアを求める。
+ * 最終スコアは BitBoard.score() と同じく、片方の石が0個の場合は空きマスも勝者の石として数える。
+ * 空きマスが多いうちは着手後の相手の合法手数で、少なくなったら偶数理論（4つの領域の空きマス数の偶奇）で手を並べ、
+ * 残り1マス、2マスは専用の処理で読み切る。
+ */
+public class MyEndgameSolver {
+  /** 評価値の上限（スコアの絶対値は LENGTH を超えない） */
+  static final int INFINITY = LENGTH + 1;
+  /** この数より空きマスが多いときは、着手後の相手の合法手数で手を並べる */
+  static final int SORT_EMPTIES = 7;
+  /** この数以上空きマスがあるときは置換表を使う */
+  static final int TABLE_EMPTIES = 7;
+  /** 置換表のデフォルトのメモリ量（MB） */
+  static final int DEFAULT_TABLE_MEGABYTES = 4;
+  /** 時間切れを確認するノード数の間隔（2のべき乗 - 1 のマスク） */
+  static final int CHECK_INTERVAL_MASK = 4095;
+
+  /** 偶数理論で使う4つの領域（盤面を縦横に2等分した区画）のマスク */
+  static final long[] REGIONS = new long[4];
+
+  static {
+    for (int k = 0; k < LENGTH; k++) {
+      int col = k % SIZE, row = k / SIZE;
+      int region = (row < SIZE / 2 ? 0 : 2) + (col < SIZE / 2 ? 0 : 1);
+      REGIONS[region] |= 1L << k;
+    }
+  }
+
+  /** 障害物のマスク（探索中は変化しない。置換表の内容はこの配置での値） */
+  long block;
+  /** 置換表 */
+  TranspositionTable table;
+  /** 空きマス数ごとの合法手バッファ */
+  int[][] moveBuffers = new int[LENGTH + 1][LENGTH];
+  /** 空きマス数ごとの並び替え用のキーのバッファ */
+  int[][] keyBuffers = new int[LENGTH + 1][LENGTH];
+
+  /** 直近の solve で探索したノード数 */
+  long nodes;
+  /** 直近の solve にかかった時間（ナノ秒） */
+  long nanos;
+  /** 直近の solve で求めた最善手（打てる手がない場合はパス） */
+  int bestMove = Move.PASS;
+  /** 探索を打ち切る時刻（System.nanoTime() の値） */
+  long deadline = Long.MAX_VALUE;
+  /** 時間切れかスレッドへの割り込みで探索を打ち切ったかどうか */
+  boolean aborted;
+
+  /**
+   * デフォルトのメモリ量の置換表で作成するコンストラクタ。
+   */
+  public MyEndgameSolver() {
+    this(DEFAULT_TABLE_MEGABYTES);
+  }
+
+  /**
+   * 置換表のメモリ量（MB）を指定するコンストラクタ。
+   */
+  public MyEndgameSolver(int tableMegabytes) {
+    this.table = new TranspositionTable(tableMegabytes);
+  }
+
+  /**
+   * 石差を最大にする手を読み切る。
+   * @param board 盤面
+   * @param color 手番の色
+   * @return 手番側から見た最終スコア（時間切れの場合は意味を持たない）
+   */
+  public int solveExact(Board board, Color color) {
+    return solve(board, color, -INFINITY, INFINITY);
+  }
+
+  /**
+   * 勝ち・負け・引き分けだけを読み切る。石差を求めるより速い。
+   * @param board 盤面
+   * @param color 手番の色
+   * @return 手番側から見て勝ちなら1、引き分けなら0、負けなら-1
+   */
+  public int solveWinLossDraw(Board board, Color color) {
+    return Integer.signum(solve(board, color, -1, 1));
+  }
+
+  /**
+   * 指定された窓で読み切る。
+   */
+  int solve(Board board, Color color, int alpha, int beta) {
+    var b = board instanceof BitBoard ? (BitBoard) board : BitBoard.of(board);
+    long own = color == BLACK ? b.black : b.white;
+    long opp = color == BLACK ? b.white : b.black;
+
+    long t0 = System.nanoTime();
+    // 置換表のキーは石のマスクだけなので、障害物の配置が変わったら前の結果を捨てる
+    if (b.block != this.block) this.table.clear();
+    this.block = b.block;
+    this.nodes = 0;
+    this.aborted = false;
+    this.bestMove = Move.PASS;
+    this.table.newSearch();
+    int v = search(own, opp, alpha, beta, false, 0);
+    this.nanos = System.nanoTime() - t0;
+    return v;
+  }
+
+  /**
+   * 1秒あたりの探索ノード数を取得する。
+   */
+  public double nodesPerSecond() {
+    return this.nanos == 0 ? 0 : this.nodes * 1e9 / this.nanos;
+  }
+
+  /**
+   * ネガマックス法による読み切り（fail-soft α-β法）。
+   * @param own 手番側の石のマスク
+   * @param opp 相手側の石のマスク
+   * @param passed 直前の手がパスかどうか
+   * @param ply ルートからの手数
+   * @return 手番側から見た最終スコア
+   */
+  int search(long own, long opp, int alpha, int beta, boolean passed, int ply) {
+    if ((++this.nodes & CHECK_INTERVAL_MASK) == 0
+        && (System.nanoTime() > this.deadline || Thread.currentThread().isInterrupted()))
+      this.aborted = true;
+    if (this.aborted) return 0;
+
+    long empty = BitBoard.FULL & ~(own | opp | this.block);
+    int n = Long.bitCount(empty);
+    if (ply > 0) {
+      if (n == 0) return finalScore(own, opp);
+      if (n == 1) return last1(own, opp, empty);
+      if (n == 2) return last2(own, opp, empty, alpha, beta, passed);
+    }
+
+    long moves = BitBoard.legalMask(own, opp, empty);
+    if (moves == 0) {
+      if (passed) return finalScore(own, opp);
+      return -search(opp, own, -beta, -alpha, true, ply + 1);
+    }
+
+    long key = 0;
+    int hint = TranspositionTable.NO_MOVE;
+    if (n >= TABLE_EMPTIES) {
+      key = key(own, opp);
+      long entry = this.table.probe(key);
+      if (entry != 0) {
+        hint = TranspositionTable.move(entry);
+        int v = (int) TranspositionTable.value(entry);
+        switch (TranspositionTable.bound(entry)) {
+        case TranspositionTable.EXACT:
+          if (ply > 0) return v;
+          break;
+        case TranspositionTable.LOWER:
+          if (ply > 0) alpha = Math.max(alpha, v);
+          break;
+        default:
+          if (ply > 0) beta = Math.min(beta, v);
+          break;
+        }
+        if (alpha >= beta) return v;
+      }
+    }
+
+    var buf = this.moveBuffers[n];
+    int count = order(own, opp, empty, moves, n, hint);
+
+    int alpha0 = alpha;
+    int best = -INFINITY;
+    int bestMove = buf[0];
+    for (int i = 0; i < count; i++) {
+      int k = buf[i];
+      long m = 1L << k;
+      long f = BitBoard.flips(k, own, opp);
+      int v = -search(opp & ~f, own | f | m, -beta, -alpha, false, ply + 1);
+      if (this.aborted) return 0;
+
+      if (v > best) {
+        best = v;
+        bestMove = k;
+        if (v > alpha) {
+          alpha = v;
+          if (alpha >= beta) break;
+        }
+      }
+    }
+
+    if (ply == 0) this.bestMove = bestMove;
+    if (n >= TABLE_EMPTIES) {
+      int bound = best <= alpha0 ? TranspositionTable.UPPER
+          : best >= beta ? TranspositionTable.LOWER : TranspositionTable.EXACT;
+      this.table.store(key, n, bound, best, bestMove);
+    }
+    return best;
+  }
+
+  /**
+   * 合法手を探索する順に並べてバッファに書き込む。
+   * 空きマスが多いときは着手後の相手の合法手が少ない順（同数なら空きマス数が奇数の領域の手を優先）、
+   * 少ないときは空きマス数が奇数の領域の手を先にする。置換表の手は常に先頭にする。
+   * @return 手の数
+   */
+  int order(long own, long opp, long empty, long moves, int n, int hint) {
+    var buf = this.moveBuffers[n];
+    long parity = 0;
+    for (long region : REGIONS)
+      if ((Long.bitCount(empty & region) & 1) != 0) parity |= region;
+
+    int count = 0;
+    if (n <= SORT_EMPTIES) {
+      for (long m = moves & parity; m != 0; m &= m - 1)
+        buf[count++] = Long.numberOfTrailingZeros(m);
+      for (long m = moves & ~parity; m != 0; m &= m - 1)
+        buf[count++] = Long.numberOfTrailingZeros(m);
+      MySearch.first(buf, count, hint);
+      return count;
+    }
+
+    var keys = this.keyBuffers[n];
+    for (long m = moves; m != 0; m &= m - 1) {
+      int k = Long.numberOfTrailingZeros(m);
+      long bit = 1L << k;
+      long f = BitBoard.flips(k, own, opp);
+      int mobility = Long.bitCount(BitBoard.legalMask(opp & ~f, own | f | bit, empty & ~bit));
+      int key = k == hint ? Integer.MIN_VALUE : 2 * mobility - ((parity & bit) != 0 ? 1 : 0);
+
+      // 挿入ソート
+      int i = count++;
+      while (i > 0 && keys[i - 1] > key) {
+        keys[i] = keys[i - 1];
+        buf[i] = buf[i - 1];
+        i--;
+      }
+      keys[i] = key;
+      buf[i] = k;
+    }
+    return count;
+  }
+
+  /**
+   * 空きマスが1つのときの読み切り。
+   * 手番側が打てれば打ち、打てなければ相手が打ち、どちらも打てなければ終局とする。
+   */
+  static int last1(long own, long opp, long empty) {
+    int k = Long.numberOfTrailingZeros(empty);
+    long f = BitBoard.flips(k, own, opp);
+    if (f != 0) return finalScore(own | f | empty, opp & ~f);
+    f = BitBoard.flips(k, opp, own);
+    if (f != 0) return finalScore(own & ~f, opp | f | empty);
+    return finalScore(own, opp);
+  }
+
+  /**
+   * 空きマスが2つのときの読み切り。
+   */
+  static int last2(long own, long opp, long empty, int alpha, int beta, boolean passed) {
+    int best = -INFINITY;
+    for (long m = empty; m != 0; m &= m - 1) {
+      int k = Long.numberOfTrailingZeros(m);
+      long bit = 1L << k;
+      long f = BitBoard.flips(k, own, opp);
+      if (f == 0) continue;
+      int v = -last1(opp & ~f, own | f | bit, empty & ~bit);
+      if (v > best) {
+        best = v;
+        if (v >= beta) return v;
+      }
+    }
+
+    if (best > -INFINITY) return best;
+    if (passed) return finalScore(own, opp);
+    return -last2(opp, own, empty, -beta, -alpha, true);
+  }
+
+  /**
+   * 終局時のスコアを手番側から見た値で計算する。
+   */
+  static int finalScore(long own, long opp) {
+    int os = Long.bitCount(own);
+    int ps = Long.bitCount(opp);
+    int score = os - ps;
+    if (os == 0 || ps == 0)
+      score += Integer.signum(score) * (LENGTH - os - ps);
+    return score;
+  }
+
+  /**
+   * 手番側と相手側の石のマスクから置換表のキーを計算する。
+   * 障害物はキーに含めないので、障害物の配置が変わるときは solve で置換表を消去する。
+   */
+  static long key(long own, long opp) {
+    long h = own * 0x9E3779B97F4A7C15L + Long.rotateLeft(opp, 29) * 0xC2B2AE3D27D4EB4FL;
+    h ^= h >>> 31;
+    h *= 0xBF58476D1CE4E5B9L;
+    return h ^ (h >>> 29);
+  }
+
+  /**
+   * ランダムに進めた局面を読み切り、ノード数と速度を表示する。
+   * 引数：空きマス数、局面数、乱数の種
+   */
+  public static void main(String args[]) {
+    var empties = args.length > 0 ? Integer.parseInt(args[0]) : 16;
+    var count = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+    var rand = new Random(args.length > 2 ? Long.parseLong(args[2]) : 0);
+    var solver = new MyEndgameSolver();
+
+    long nodes = 0, nanos = 0;
+    for (int i = 0; i < count; i++) {
+      var board = randomPosition(rand, empties);
+      var turn = board.getTurn();
+      var score = solver.solveExact(board, turn);
+      nodes += solver.nodes;
+      nanos += solver.nanos;
+      System.out.printf("%2d empties  %s %s  score %+3d  nodes %10d  %8.3fs  %6.2f Mnps\n",
+          board.count(NONE), turn, Move.toIndexString(solver.bestMove), score,
+          solver.nodes, solver.nanos / 1e9, solver.nodesPerSecond() / 1e6);
+    }
+    System.out.printf("total nodes %d  %.3fs  %.2f Mnps\n", nodes, nanos / 1e9, nodes * 1e3 / Math.max(1, nanos));
+  }
+
+  /**
+   * 初期配置からランダムに打って、空きマスが指定された数になった局面を作る。
+   * 途中で終局した場合はやり直す。
+   */
+  static BitBoard randomPosition(Random rand, int empties) {
+    while (true) {
+      var board = new BitBoard();
+      var moves = new int[LENGTH];
+      while (board.isEnd() == false && board.count(NONE) > empties) {
+        var turn = board.getTurn();
+        int n = board.findLegalIndexes(turn, moves);
+        board = board.placed(BitBoard.moveOf(moves[rand.nextInt(n)], turn));
+      }
+      if (board.isEnd() == false && board.legalMask(board.getTurn()) != 0) return board;
+    }
+  }
+}
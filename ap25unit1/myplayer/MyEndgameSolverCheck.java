@@ -0,0 +1,121 @@
+package myplayer;
+
+import static ap25.Board.*;
+import static ap25.Color.*;
+
+import java.util.Random;
+
+import ap25.*;
+
+/**
+ * MyEndgameSolver を総当たりのミニマックス探索と突き合わせる検査ツール
+ * ランダムに打って作った空きマスの少ない局面（一部は障害物を加えたもの）を、
+ * Board.placed と Board.score だけを使う総当たりで読み切った値と比べる。
+ * solveExact のスコア、solveWinLossDraw の勝敗、bestMove を打った後の総当たりの値を確かめる。
+ * 置換表は局面をまたいで使い回し、一部の局面では読み切った後に同じ石の配置の空きマスに障害物を加えて読み直す
+ * （障害物のない配置で置換表に残った値を使っていないことを確かめる）。
+ * 食い違いがあれば最初の1件を表示して終了コード1で終わる。
+ *
+ * 引数：
+ *   -positions n  局面の数（デフォルト 300）
+ *   -maxEmpties n  局面の空きマス数の上限（デフォルト 10。置換表と手の並び替えの経路を通すには8以上にする）
+ *   -seed n  乱数の種（デフォルト 0）
+ */
+public class MyEndgameSolverCheck {
+  /** 障害物を加えて読み直す局面の割合（この数に1局面） */
+  static final int BLOCKED_POSITION_INTERVAL = 3;
+  /** 加える障害物の数の上限 */
+  static final int MAX_BLOCKS = 2;
+
+  /** 総当たりで訪れたノード数 */
+  long nodes;
+  /** 最初の食い違い（なければnull） */
+  String failure;
+
+  public static void main(String args[]) {
+    var positions = 300;
+    var maxEmpties = 10;
+    var seed = 0L;
+    for (int i = 0; i + 1 < args.length; i += 2) {
+      switch (args[i]) {
+      case "-positions": positions = Integer.parseInt(args[i + 1]); break;
+      case "-maxEmpties": maxEmpties = Integer.parseInt(args[i + 1]); break;
+      case "-seed": seed = Long.parseLong(args[i + 1]); break;
+      default: throw new IllegalArgumentException("unknown option: " + args[i]);
+      }
+    }
+
+    var check = new MyEndgameSolverCheck();
+    var ok = check.run(new Random(seed), positions, maxEmpties);
+    System.out.printf("%d positions, %d minimax nodes: %s\n", positions, check.nodes, ok ? "ok" : "NG");
+    if (ok == false) {
+      System.out.println(check.failure);
+      System.exit(1);
+    }
+  }
+
+  /**
+   * 指定された数の局面で突き合わせる
+   * @return すべて一致すればtrue
+   */
+  boolean run(Random rand, int positions, int maxEmpties) {
+    var solver = new MyEndgameSolver(1);
+    for (int i = 0; i < positions; i++) {
+      var board = MyEndgameSolver.randomPosition(rand, 1 + rand.nextInt(maxEmpties));
+      if (check(solver, board, i) == false) return false;
+      if (i % BLOCKED_POSITION_INTERVAL != 0) continue;
+
+      var blocked = board.clone();
+      for (int j = 1 + rand.nextInt(MAX_BLOCKS); j > 0 && blocked.count(NONE) > 1; j--) {
+        int k;
+        do k = rand.nextInt(LENGTH); while (blocked.get(k) != NONE);
+        blocked.set(k, BLOCK);
+      }
+      if (blocked.isEnd() == false && check(solver, blocked, i) == false) return false;
+    }
+    return true;
+  }
+
+  /**
+   * 1つの局面で突き合わせる
+   * @param position 局面の番号（食い違いの報告に使う）
+   * @return 一致すればtrue
+   */
+  boolean check(MyEndgameSolver solver, BitBoard board, int position) {
+    var turn = board.getTurn();
+    int expected = minimax(board, turn);
+    int exact = solver.solveExact(board, turn);
+    if (exact != expected) return fail(position, "solveExact " + exact + ", minimax " + expected, board);
+
+    var best = solver.bestMove == Move.PASS ? Move.ofPass(turn) : BitBoard.moveOf(solver.bestMove, turn);
+    if (board.isLegalMove(best) == false) return fail(position, "illegal best move " + best, board);
+    int bestScore = -minimax(board.placed(best), turn.flipped());
+    if (bestScore != expected) return fail(position, "best move " + best + " scores " + bestScore, board);
+
+    int wld = solver.solveWinLossDraw(board, turn);
+    if (wld != Integer.signum(expected)) return fail(position, "solveWinLossDraw " + wld, board);
+    return true;
+  }
+
+  /**
+   * 終局まで総当たりで読み切る
+   * @return 手番側から見た最終スコア
+   */
+  int minimax(Board board, Color turn) {
+    this.nodes++;
+    if (board.isEnd()) return turn == BLACK ? board.score() : -board.score();
+    int best = -MyEndgameSolver.INFINITY;
+    for (var move : board.findLegalMoves(turn))
+      best = Math.max(best, -minimax(board.placed(move), turn.flipped()));
+    return best;
+  }
+
+  /**
+   * 食い違いを記録する
+   * @return 常にfalse
+   */
+  boolean fail(int position, String what, Board board) {
+    this.failure = String.format("position %d (%s to move): %s\n%s", position, board.getTurn(), what, board);
+    return false;
+  }
+}
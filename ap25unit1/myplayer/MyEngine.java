@@ -0,0 +1,165 @@
+package myplayer;
+
+import static ap25.Color.*;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.charset.StandardCharsets;
+
+import ap25.*;
+
+/**
+ * 別のプロセスで動くプレイヤー（エンジン）
+ * 標準入出力、またはループバックアドレスの TCP ポートで、1行1コマンドのテキストのプロトコルを話す。
+ * プロセスは対戦をまたいで動き続けるので、1手にかかるのは1往復の通信だけになる。
+ *
+ * プロトコル（行は LF で区切る。位置は "a1" の形式、パスは ".."）：
+ *   エンジン → 接続の直後に "ready 名前"
+ *   new 色 局面    新しい対戦を始める。色は o（黒）か x（白）、局面は MyPerft.format の形式（空白を含む。標準の大きさのみ）
+ *   go [手 ...]    前回の go の後に盤面に加わった手（相手の手）を順に反映してから考える
+ *                  → "move 手 思考時間（ナノ秒）"
+ *   quit           接続を終える
+ *   不正なコマンドには "error 理由" を返し、接続は続ける。
+ *
+ * 引数：
+ *   -player my|random  使うプレイヤー（デフォルト my。random は試験用の代役）
+ *   -depth n  my の探索の深さ（デフォルト 6。0 なら MyPlayer(Color) と同じく持ち時間で反復深化する）
+ *   -port n  標準入出力ではなく、ループバックアドレスのポート n で接続を1つずつ受け付ける
+ */
+public class MyEngine {
+  /** 使うプレイヤーの種類 */
+  String kind;
+  /** MyPlayer の探索の深さ（0 なら持ち時間で制御） */
+  int depth;
+  /** 色ごとのプレイヤー（[0:黒, 1:白]。最初に必要になったときに作り、対戦をまたいで使う） */
+  Player[] players = new Player[2];
+  /** 現在の対戦のプレイヤー */
+  Player player;
+  /** 現在の盤面 */
+  Board board;
+
+  /**
+   * コンストラクタ
+   * @param kind my または random
+   * @param depth MyPlayer の探索の深さ（0 なら持ち時間で制御）
+   */
+  public MyEngine(String kind, int depth) {
+    this.kind = kind;
+    this.depth = depth;
+  }
+
+  public static void main(String args[]) throws IOException {
+    var kind = "my";
+    var depth = 6;
+    var port = -1;
+    for (int i = 0; i < args.length; i++) {
+      switch (args[i]) {
+      case "-player": kind = args[++i]; break;
+      case "-depth": depth = Integer.parseInt(args[++i]); break;
+      case "-port": port = Integer.parseInt(args[++i]); break;
+      default: throw new IllegalArgumentException("unknown option: " + args[i]);
+      }
+    }
+
+    var engine = new MyEngine(kind, depth);
+    if (port < 0) {
+      engine.serve(new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8)),
+          new PrintWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8)));
+      return;
+    }
+
+    try (var server = ServerSocketChannel.open()) {
+      server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+      System.err.println("listening on " + server.getLocalAddress());
+      while (true) {
+        try (var channel = server.accept()) {
+          channel.socket().setTcpNoDelay(true);
+          engine.serve(new BufferedReader(new InputStreamReader(Channels.newInputStream(channel), StandardCharsets.UTF_8)),
+              new PrintWriter(new OutputStreamWriter(Channels.newOutputStream(channel), StandardCharsets.UTF_8)));
+        } catch (IOException e) {
+          System.err.println("connection closed: " + e);
+        }
+      }
+    }
+  }
+
+  /**
+   * 1つの接続でコマンドを処理する。quit か入力の終わりで戻る
+   */
+  public void serve(BufferedReader in, PrintWriter out) throws IOException {
+    out.print("ready " + this.kind + "\n");
+    out.flush();
+    String line;
+    while ((line = in.readLine()) != null) {
+      var reply = execute(line.trim());
+      if (reply == null) break;
+      if (reply.isEmpty() == false) {
+        out.print(reply + "\n");
+        out.flush();
+      }
+    }
+  }
+
+  /**
+   * 1行のコマンドを実行する
+   * @return 返す行（返す行がなければ空文字列、接続を終える場合はnull）
+   */
+  String execute(String line) {
+    var words = line.split(" ", 3);
+    try {
+      switch (words[0]) {
+      case "new":
+        var color = words[1].equals("x") ? WHITE : BLACK;
+        var parsed = MyPerft.parse(words[2]);
+        if (parsed.geometry.isStandardSize() == false) return "error unsupported board size " + parsed.geometry;
+        this.board = BitBoard.of(parsed);
+        this.player = player(color);
+        this.player.setBoard(this.board.clone());
+        return "";
+      case "go":
+        if (this.player == null) return "error no game";
+        if (words.length > 1) {
+          for (var pos : line.substring(3).trim().split(" ")) {
+            var turn = this.board.getTurn();
+            var move = pos.equals("..") ? Move.ofPass(turn) : Move.of(pos, turn);
+            if (this.board.isLegalMove(move) == false) return "error illegal move " + pos;
+            this.board = this.board.placed(move);
+          }
+        }
+        long t0 = System.nanoTime();
+        var move = this.player.think(this.board.clone()).colored(this.player.getColor());
+        long nanos = System.nanoTime() - t0;
+        if (move.isLegal()) this.board = this.board.placed(move);
+        return "move " + move + " " + nanos;
+      case "quit":
+        return null;
+      case "":
+        return "";
+      default:
+        return "error unknown command " + words[0];
+      }
+    } catch (RuntimeException e) {
+      return "error " + e;
+    }
+  }
+
+  /**
+   * 指定された色のプレイヤーを取得する（なければ作る）
+   */
+  Player player(Color color) {
+    int i = color == BLACK ? 0 : 1;
+    if (this.players[i] == null) {
+      if (this.kind.equals("random")) this.players[i] = new RandomPlayer(color, i);
+      else if (this.depth == 0) this.players[i] = new MyPlayer(color);
+      else this.players[i] = new MyPlayer(MyPlayer.MY_NAME, color, this.depth);
+    }
+    return this.players[i];
+  }
+}
@@ -0,0 +1,317 @@
+package myplayer;
+
+import static ap25.Color.*;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import ap25.*;
+
+/**
+ * 別のプロセスで動くエンジン（MyEngine のプロトコルを話すプログラム）に思考を任せるプレイヤー
+ * エンジンのプロセスは一度だけ起動して（またはソケットに一度だけ接続して）対戦をまたいで使い続ける。
+ * 局面は setBoard のときに一度だけ送り、その後は think のたびに前回からの相手の手だけを go の行にまとめて送るので、
+ * 1手にかかるのは1往復の通信だけになる。手元の盤面と食い違ったときは、局面を送り直す行を go の前に続けて書く。
+ * 通信に失敗した場合や、エンジンがエラーを返した場合は Move.ofError を返す（MyGame では反則負けになる）。
+ * 対局から渡された締め切りを過ぎても応答がない場合や、think のスレッドが割り込まれた場合は、
+ * 遅れて届く応答を次の go の応答と取り違えないように接続を切り、以後の think は Move.ofError を返す。
+ */
+public class MyEnginePlayer extends Player implements AutoCloseable, MyClock.DeadlineAware {
+  /** 締め切りを過ぎた think の接続を切るスレッド（全プレイヤーで共有する） */
+  static final ScheduledThreadPoolExecutor WATCHDOG = new ScheduledThreadPoolExecutor(1, r -> {
+    var thread = new Thread(r, "engine-watchdog");
+    thread.setDaemon(true);
+    return thread;
+  });
+  static {
+    WATCHDOG.setRemoveOnCancelPolicy(true);
+  }
+
+  /** エンジンのプロセス（ソケットで接続した場合はnull） */
+  Process process;
+  /** エンジンのソケット（プロセスの標準入出力を使う場合はnull） */
+  SocketChannel channel;
+  /** エンジンからの入力 */
+  BufferedReader in;
+  /** エンジンへの出力 */
+  Writer out;
+  /** エンジンが最後に知っている盤面（エンジンの手を打った後。対戦が始まっていなければnull） */
+  Board board;
+  /** 直前の think でエンジンが報告した思考時間（ナノ秒） */
+  long thinkNanos;
+  /** これまでの think の往復時間の合計（ナノ秒） */
+  long roundTripNanos;
+  /** これまでの think でエンジンが報告した思考時間の合計（ナノ秒） */
+  long engineNanos;
+  /** これまでの think の回数 */
+  int requests;
+  /** 対局から渡された think の締め切り（System.nanoTime() の値。渡されていなければ Long.MAX_VALUE） */
+  long deadline = Long.MAX_VALUE;
+  /** 接続を切ったかどうか */
+  volatile boolean disconnected;
+
+  /**
+   * エンジンのプロセスを起動し、標準入出力で通信するプレイヤーを作成する
+   * @param name プレイヤー名
+   * @param color プレイヤーの色
+   * @param command エンジンを起動するコマンド
+   */
+  public MyEnginePlayer(String name, Color color, List<String> command) throws IOException {
+    super(name, color);
+    this.process = new ProcessBuilder(command).redirectError(ProcessBuilder.Redirect.INHERIT).start();
+    connect(this.process.getInputStream(), this.process.getOutputStream());
+  }
+
+  /**
+   * ソケットで待ち受けているエンジンに接続するプレイヤーを作成する
+   * @param name プレイヤー名
+   * @param color プレイヤーの色
+   * @param address エンジンのアドレス
+   */
+  public MyEnginePlayer(String name, Color color, InetSocketAddress address) throws IOException {
+    super(name, color);
+    this.channel = SocketChannel.open(address);
+    this.channel.socket().setTcpNoDelay(true);
+    connect(Channels.newInputStream(this.channel), Channels.newOutputStream(this.channel));
+  }
+
+  /**
+   * このプロセスと同じ Java とクラスパスで MyEngine を起動するコマンドを作る
+   * @param args MyEngine に渡す引数
+   */
+  public static List<String> localCommand(String... args) {
+    var command = new ArrayList<String>();
+    command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+    command.add("-cp");
+    command.add(System.getProperty("java.class.path"));
+    command.add(MyEngine.class.getName());
+    command.addAll(List.of(args));
+    return command;
+  }
+
+  /**
+   * 入出力を設定し、エンジンの ready を待つ
+   */
+  void connect(InputStream in, OutputStream out) throws IOException {
+    this.in = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+    this.out = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+    var line = this.in.readLine();
+    if (line == null || line.startsWith("ready") == false) {
+      close();
+      throw new IOException("engine not ready: " + line);
+    }
+  }
+
+  /**
+   * 新しい対戦の局面をエンジンに送る
+   * 応答はないので、次の go と同じ往復にまとまる
+   */
+  public void setBoard(Board board) {
+    super.setBoard(board);
+    this.deadline = Long.MAX_VALUE;
+    if (this.disconnected) return;
+    try {
+      this.out.write(newGame(board));
+      this.board = board.clone();
+    } catch (IOException e) {
+      this.board = null;
+    }
+  }
+
+  /**
+   * 次の think の締め切りを設定する。締め切りを過ぎても応答がなければ接続を切る
+   */
+  public void setDeadline(long deadline) {
+    this.deadline = deadline;
+  }
+
+  /**
+   * 前回からの手をまとめて送り、エンジンの手を受け取る
+   */
+  public Move think(Board board) {
+    if (this.disconnected) return Move.ofError(getColor());
+    var timer = this.deadline == Long.MAX_VALUE ? null
+        : WATCHDOG.schedule(this::disconnect, this.deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+    try {
+      var request = new StringBuilder();
+      var moves = pending(board);
+      if (moves == null) request.append(newGame(board));
+      request.append("go");
+      if (moves != null) for (var move : moves) request.append(' ').append(move);
+      request.append('\n');
+
+      long t0 = System.nanoTime();
+      this.out.write(request.toString());
+      this.out.flush();
+      var reply = this.in.readLine();
+      this.roundTripNanos += System.nanoTime() - t0;
+      this.requests++;
+      if (this.disconnected || Thread.currentThread().isInterrupted()) {
+        disconnect();
+        return Move.ofError(getColor());
+      }
+
+      if (reply == null || reply.startsWith("move ") == false) {
+        this.board = null;
+        return Move.ofError(getColor());
+      }
+      var words = reply.split(" ");
+      var move = parse(words[1]);
+      this.thinkNanos = words.length > 2 ? Long.parseLong(words[2]) : 0;
+      this.engineNanos += this.thinkNanos;
+      this.board = move.isLegal() && board.isLegalMove(move) ? board.placed(move) : null;
+      return move;
+    } catch (IOException | RuntimeException e) {
+      // ソケットは読み書きの途中で割り込まれると閉じる
+      if (this.disconnected || Thread.currentThread().isInterrupted()) disconnect();
+      this.board = null;
+      return Move.ofError(getColor());
+    } finally {
+      if (timer != null) timer.cancel(false);
+    }
+  }
+
+  /**
+   * エンジンとの接続を切る（プロセスは強制終了する）
+   * think のスレッドが応答を読んでいる間に別のスレッドから呼んでも、読み込みはすぐに終わる
+   */
+  void disconnect() {
+    this.disconnected = true;
+    try {
+      if (this.channel != null) this.channel.close();
+    } catch (IOException e) {
+      // 既に閉じている
+    }
+    if (this.process != null) this.process.destroyForcibly();
+  }
+
+  /**
+   * エンジンが知っている盤面から指定された盤面までに打たれた手を求める
+   * 交互に打つ通常の対戦では、相手の直前の手（先手の初手では手なし）になる
+   * @return 手のリスト（求められない場合はnull）
+   */
+  List<Move> pending(Board board) {
+    if (this.board == null) return null;
+    if (this.board.equals(board) && this.board.getTurn() == board.getTurn()) return List.of();
+    var move = board.getMove();
+    if (move.isNone() || move.isLegal() == false || this.board.isLegalMove(move) == false) return null;
+    var b = this.board.placed(move);
+    if (b.equals(board) == false) return null;
+    return List.of(move);
+  }
+
+  /**
+   * 局面を送る new の行を作る
+   */
+  String newGame(Board board) {
+    return "new " + (getColor() == WHITE ? "x" : "o") + " " + MyPerft.format(board) + "\n";
+  }
+
+  /**
+   * エンジンが返した位置の文字列を手にする
+   */
+  Move parse(String pos) {
+    if (pos.equals("..")) return Move.ofPass(getColor());
+    if (pos.length() != 2) return Move.ofError(getColor());
+    int col = pos.charAt(0) - 'a', row = pos.charAt(1) - '1';
+    if (Move.isValid(col, row) == false) return Move.ofError(getColor());
+    return Move.of(Move.index(col, row), getColor());
+  }
+
+  /**
+   * 1手あたりの通信の平均オーバーヘッド（往復時間からエンジンの思考時間を引いたもの、マイクロ秒）
+   */
+  public double overheadMicros() {
+    if (this.requests == 0) return 0;
+    return (this.roundTripNanos - this.engineNanos) / 1e3 / this.requests;
+  }
+
+  /**
+   * エンジンに quit を送って接続を閉じる
+   */
+  public void close() {
+    try {
+      if (this.disconnected == false) {
+        this.out.write("quit\n");
+        this.out.flush();
+      }
+    } catch (IOException | RuntimeException e) {
+      // 既に閉じている
+    }
+    try {
+      if (this.channel != null) this.channel.close();
+      if (this.process != null) {
+        this.process.getOutputStream().close();
+        this.process.waitFor();
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    } catch (InterruptedException e) {
+      this.process.destroy();
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * エンジンのプレイヤーと MyPlayer を対戦させ、1手あたりの通信のオーバーヘッドを表示する
+   * 引数：
+   *   -port n  ポート n で待ち受けているエンジンに接続する（指定しなければ MyEngine を子プロセスで起動する）
+   *   -player my|random  子プロセスの MyEngine が使うプレイヤー（デフォルト random）
+   *   -games n  対戦数（デフォルト 4）
+   */
+  public static void main(String args[]) throws IOException {
+    var port = -1;
+    var kind = "random";
+    var games = 4;
+    for (int i = 0; i < args.length; i++) {
+      switch (args[i]) {
+      case "-port": port = Integer.parseInt(args[++i]); break;
+      case "-player": kind = args[++i]; break;
+      case "-games": games = Integer.parseInt(args[++i]); break;
+      default: throw new IllegalArgumentException("unknown option: " + args[i]);
+      }
+    }
+
+    try (var engine = port < 0
+        ? new MyEnginePlayer("engine", WHITE, localCommand("-player", kind))
+        : new MyEnginePlayer("engine", WHITE, new InetSocketAddress(InetAddress.getLoopbackAddress(), port))) {
+      var my = new MyPlayer(MyPlayer.MY_NAME, BLACK, 4);
+      int wins = 0, fouls = 0;
+      for (int g = 0; g < games; g++) {
+        Board board = new BitBoard();
+        my.setBoard(board.clone());
+        engine.setBoard(board.clone());
+        while (board.isEnd() == false) {
+          var player = board.getTurn() == BLACK ? (Player) my : engine;
+          var move = player.think(board.clone()).colored(player.getColor());
+          if (board.isLegalMove(move) == false) {
+            fouls++;
+            board.foul(player.getColor());
+            break;
+          }
+          board = board.placed(move);
+        }
+        if (board.winner() == WHITE) wins++;
+        System.out.printf("game %d: %s %d%n", g + 1, board.winner(), board.score());
+      }
+      System.out.printf("engine wins %d/%d, fouls %d, %d requests, overhead %.1f us/move%n",
+          wins, games, fouls, engine.requests, engine.overheadMicros());
+    }
+  }
+}
@@ -0,0 +1,53 @@
+package myplayer;
+
+import static ap25.Board.*;
+
+import ap25.*;
+
+/**
+ * 盤面評価を行うクラス。
+ * 盤面の各マスに重み付けを行い、全体の評価値を計算する。
+ */
+class MyEval {
+  /**
+   * 盤面評価用の重み行列。
+   * 各マスの重要度を表す値が格納されている。
+   * 角とその周辺が高い値になっている。
+   */
+  static float[][] M = {
+      { 10,  10, 10, 10,  10,  10},
+      { 10,  -5,  1,  1,  -5,  10},
+      { 10,   1,  1,  1,   1,  10},
+      { 10,   1,  1,  1,   1,  10},
+      { 10,  -5,  1,  1,  -5,  10},
+      { 10,  10, 10, 10,  10,  10},
+  };
+
+  /**
+   * 探索する盤面に評価用の情報を付ける。
+   * 探索の開始時に呼ばれる。この評価関数では何もしない。
+   */
+  void prepare(BitBoard board) {
+  }
+
+  /**
+   * 盤面の評価値を計算する。
+   * ゲームが終了している場合は最終スコアに大きな重みを付ける。
+   * そうでない場合は全マスの重み付け合計を返す。
+   */
+  public float value(Board board) {
+    if (board.isEnd()) return 1000000 * board.score();
+
+    float v = 0;
+    for (int k = 0; k < LENGTH; k++) v += score(board, k);
+    return v;
+  }
+
+  /**
+   * 指定された位置の評価値を計算する。
+   * マスの重みと石の色の値を掛け合わせる。
+   */
+  float score(Board board, int k) {
+    return M[k / SIZE][k % SIZE] * board.get(k).getValue();
+  }
+}
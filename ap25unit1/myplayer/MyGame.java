@@ -3,43 +3,67 @@ package myplayer;
 import ap25.*;
 import static ap25.Color.*;
 import java.util.*;
+import java.util.concurrent.*;
 import java.util.stream.*;
 
 /**
  * オセロゲームのメインクラス
  * ゲームの進行を管理し、プレイヤーの手番制御を行う
+ * think は対局のスレッドとは別の think 用のスレッドで実行し、対局のスレッドは手番の残り時間だけ待つ。
+ * 残り時間を過ぎても戻らない think は割り込んで時間切れの反則負けとし、対局のスレッドは止まらない。
+ * 時間切れにしたプレイヤーは、その think が実際に戻るまで次のゲームで呼ばない
+ * （割り込みに応じないプレイヤーでは、次のゲームの開始がそれまで待たされる）。
+ * スレッドの受け渡しには1手あたり数マイクロ秒かかるので、信頼できる速いプレイヤー同士で大量に対局するときは
+ * setWatchdog(false) で対局のスレッドで直接 think を呼べる（時間切れは think が戻ってから判定する）。
  */
 public class MyGame {
   public static void main(String args[]) {
     // 黒と白のプレイヤーを初期化
     var player1 = new myplayer.MyPlayer(BLACK);
     var player2 = new myplayer.RandomPlayer(WHITE);
-    var board = new MyBoard();
+    var board = new BitBoard();
     var game = new MyGame(board, player1, player2);
     game.play();
   }
 
   // 思考時間の制限（秒）
   static final float TIME_LIMIT_SECONDS = 60;
+  // think を実行するスレッド（全対局で共有する。時間切れで捨てたスレッドの代わりは必要なときに作られる）
+  static final ExecutorService THINKERS = Executors.newCachedThreadPool(r -> {
+    var thread = new Thread(r, "think");
+    thread.setDaemon(true);
+    return thread;
+  });
 
   // ゲームの状態を保持するフィールド
+  Board initialBoard;   // 初期盤面（各ゲームの開始時に複製して使う）
   Board board;          // ゲームボード
   Player firstPlayer;   // 先手プレイヤー
   Player secondPlayer;  // 後手プレイヤー
   Map<Color, Player> players;  // 色とプレイヤーの対応付け
   List<Move> moves = new ArrayList<>();  // 手の履歴
-  Map<Color, Float> times = new HashMap<>(Map.of(BLACK, 0f, WHITE, 0f));  // 各プレイヤーの思考時間
+  MyClock clock = new MyClock(TIME_LIMIT_SECONDS);  // 各プレイヤーの思考時間
+  boolean watchdog = true;  // think を別スレッドで実行し、締め切りで打ち切るかどうか
+  Map<Player, CountDownLatch> abandoned = new HashMap<>();  // 時間切れにした think の終了を待つためのラッチ
 
   /**
    * コンストラクタ
    */
   public MyGame(Board board, Player firstPlayer, Player secondPlayer) {
+    this.initialBoard = board.clone();
     this.board = board.clone();
     this.firstPlayer = firstPlayer;
     this.secondPlayer = secondPlayer;
     this.players = Map.of(BLACK, firstPlayer, WHITE, secondPlayer);
   }
 
+  /**
+   * think を別スレッドで実行して締め切りで打ち切るかどうかを設定する（デフォルトは true）
+   */
+  public void setWatchdog(boolean watchdog) {
+    this.watchdog = watchdog;
+  }
+
   /**
    * 先手と後手を入れ替えるメソッド
    */
@@ -91,9 +115,9 @@ public class MyGame {
       }
       System.out.println();
       // 各ゲームの後にボードをリセット
-      this.board = new MyBoard();
+      this.board = this.initialBoard.clone();
       this.moves.clear();
-      this.times.replaceAll((k, v) -> 0.0f);  // 各プレイヤーの思考時間をリセット
+      this.clock.reset();  // 各プレイヤーの思考時間をリセット
     }
     
     // 結果を表示
@@ -104,8 +128,18 @@ public class MyGame {
     System.out.printf("引き分け: %d (%.1f%%)\n", draws, (float)draws/gameCount*100);
   }
 
-  public void playOneGame() {    
-    // 各プレイヤーにボードの状態を設定
+  public void playOneGame() {
+    runOneGame();
+    printResult(board, moves);
+  }
+
+  /**
+   * 1ゲームを終了まで進め、最終盤面を返すメソッド
+   * 結果の表示は行わない
+   */
+  public Board runOneGame() {
+    // 時間切れにした think が戻るまで待ってから、各プレイヤーにボードの状態を設定
+    this.players.values().forEach(this::awaitAbandoned);
     this.players.values().forEach(p -> p.setBoard(this.board.clone()));
 
     // ゲームが終了するまでループ
@@ -113,25 +147,20 @@ public class MyGame {
       var turn = this.board.getTurn();  // 現在の手番を取得
       var player = this.players.get(turn);  // 手番のプレイヤーを取得
 
-      Error error = null;
-      long t0 = System.currentTimeMillis();
-      Move move;
-
-      // プレイヤーの手を取得
-      try {
-        move = player.think(board.clone()).colored(turn);
-      } catch (Error e) {
-        error = e;
-        move = Move.ofError(turn);
-      }
+      // 締め切りを設定し、プレイヤーの手を取得
+      long t0 = System.nanoTime();
+      long deadline = this.clock.deadline(turn, t0);
+      if (player instanceof MyClock.DeadlineAware)
+        ((MyClock.DeadlineAware) player).setDeadline(deadline);
+      var error = new Error[1];
+      var move = think(player, board.clone(), deadline, error);
+      if (move != null) move = move.colored(turn);
 
       // 思考時間を記録
-      long t1 = System.currentTimeMillis();
-      final var t = (float) Math.max(t1 - t0, 1) / 1000.f;
-      this.times.compute(turn, (k, v) -> v + t);
+      this.clock.charge(turn, System.nanoTime() - t0);
 
       // 手の妥当性をチェック
-      move = check(turn, move, error);
+      move = check(turn, move, error[0]);
       moves.add(move);
 
       // ボードを更新
@@ -145,7 +174,80 @@ public class MyGame {
       // System.out.println(board);
     }
 
-    printResult(board, moves);
+    return board;
+  }
+
+  /**
+   * think 用のスレッドでプレイヤーの手を求め、締め切りまで待つメソッド
+   * 締め切りを過ぎたら think のスレッドに割り込み、時間切れの手を返す（setWatchdog(false) なら直接呼ぶ）。
+   * think が Error を投げた場合はエラーの手を返し、RuntimeException はそのまま投げる
+   * @param error 投げられた Error を入れる配列（要素1つ）
+   */
+  Move think(Player player, Board board, long deadline, Error[] error) {
+    var turn = board.getTurn();
+    if (this.watchdog == false) {
+      try {
+        return player.think(board);
+      } catch (Error e) {
+        error[0] = e;
+        return Move.ofError(turn);
+      }
+    }
+
+    var finished = new CountDownLatch(1);
+    var future = THINKERS.submit(() -> {
+      try {
+        return player.think(board);
+      } finally {
+        finished.countDown();
+      }
+    });
+    try {
+      return future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+    } catch (TimeoutException e) {
+      abandon(player, future, finished);
+      return Move.ofTimeout(turn);
+    } catch (InterruptedException e) {
+      abandon(player, future, finished);
+      Thread.currentThread().interrupt();
+      return Move.ofError(turn);
+    } catch (ExecutionException e) {
+      var cause = e.getCause();
+      if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+      error[0] = cause instanceof Error ? (Error) cause : new Error(cause);
+      return Move.ofError(turn);
+    }
+  }
+
+  /**
+   * 待つのをやめた think に割り込み、戻るまでそのプレイヤーを呼ばないように記録するメソッド
+   * @param finished think が戻ったときに0になるラッチ
+   */
+  void abandon(Player player, Future<Move> future, CountDownLatch finished) {
+    future.cancel(true);
+    this.abandoned.put(player, finished);
+  }
+
+  /**
+   * 時間切れにした think が戻るまで待つメソッド
+   * 待っている間に割り込まれても最後まで待ち、割り込まれたことは戻る前に割り込みフラグに戻す
+   */
+  void awaitAbandoned(Player player) {
+    var finished = this.abandoned.remove(player);
+    if (finished == null) return;
+    boolean interrupted = false;
+    try {
+      while (true) {
+        try {
+          finished.await();
+          break;
+        } catch (InterruptedException e) {
+          interrupted = true;
+        }
+      }
+    } finally {
+      if (interrupted) Thread.currentThread().interrupt();
+    }
   }
 
   /**
@@ -153,22 +255,21 @@ public class MyGame {
    */
   Move check(Color turn, Move move, Error error) {
     // エラーチェック
-    if (move.isError()) {
+    if (move != null && move.isError()) {
       System.err.printf("error: %s %s", turn, error);
       System.err.println(board);
       return move;
     }
 
     // 時間切れチェック
-    if (this.times.get(turn) > TIME_LIMIT_SECONDS) {
-      System.err.printf("timeout: %s %.2f", turn, this.times.get(turn));
+    if (this.clock.isOver(turn) || move != null && move.isTimeout()) {
+      System.err.printf("timeout: %s %.2f", turn, this.clock.seconds(turn));
       System.err.println(board);
       return Move.ofTimeout(turn);
     }
 
     // 合法手チェック
-    var legals = board.findLegalMoves(turn);
-    if (move == null || legals.contains(move) == false) {
+    if (move == null || move.getColor() != turn || board.isLegalMove(move) == false) {
       System.err.printf("illegal move: %s %s", turn, move);
       System.err.println(board);
       return Move.ofIllegal(turn);
@@ -188,13 +289,19 @@ public class MyGame {
    * ゲーム結果を表示するメソッド
    */
   public void printResult(Board board, List<Move> moves) {
+    System.out.println(resultString(board, moves));
+  }
+
+  /**
+   * ゲーム結果の文字列表現を返すメソッド
+   */
+  public String resultString(Board board, List<Move> moves) {
     var result = String.format("%5s%-9s", "", "draw");
     var score = Math.abs(board.score());
     if (score > 0)
       result = String.format("%-4s won by %-2d", getWinner(board), score);
 
-    var s = toString() + " -> " + result + "\t| " + toString(moves);
-    System.out.println(s);
+    return toString() + " -> " + result + "\t| " + toString(moves);
   }
 
   /**
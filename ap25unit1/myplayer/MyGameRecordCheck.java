@@ -0,0 +1,254 @@
+package myplayer;
+
+import static ap25.Board.*;
+import static ap25.Color.*;
+import static myplayer.MyGameRecordWriter.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import ap25.*;
+
+/**
+ * MyGameRecordWriter で書いた棋譜を MyGameRecordReader で読み戻し、書いた内容と一致することを確かめる検査ツール
+ * 乱数で選んだ手の対局（一部は障害物を置き、一部は序盤の何手かを進めた局面から始め、一部は反則で終わる）を、
+ * 一時ファイルに何回かに分けて書き込む（2回目以降は既存のファイルへの追記になる）。
+ * 読み戻したレコードの数と、各レコードのスコア、終局の種類、思考時間、開始局面と手番、プレイヤー名、手を比べ、
+ * 開始局面から手を再生した盤面が書いた対局の盤面と一致することも確かめる。
+ * プレイヤー名は長さと文字（UTF-8 で複数バイトになるものを含む）を乱数で選ぶので、
+ * リーダーの項目の位置（SCORE 〜 NAMES）がライターの書く順とずれると食い違いになる。
+ * 最後に、棋譜ファイルでないファイルへの追記が IOException になることも確かめる。
+ * 食い違いがあれば最初の1件を表示して終了コード1で終わる。
+ *
+ * 引数：
+ *   -games n  対局数（デフォルト 3000）
+ *   -runs n  書き込みを分ける回数（デフォルト 3）
+ *   -seed n  乱数の種（デフォルト 0）
+ */
+public class MyGameRecordCheck {
+  /** 障害物を置く対局の割合（この数に1局） */
+  static final int BLOCKED_GAME_INTERVAL = 3;
+  /** 障害物を置く対局での障害物の数の上限 */
+  static final int MAX_BLOCKS = 4;
+  /** 反則で終わる対局の割合（この数に1局） */
+  static final int FOUL_GAME_INTERVAL = 5;
+  /** 開始局面までに進める手数の上限 */
+  static final int MAX_OPENING_MOVES = 5;
+  /** プレイヤー名の文字数の上限 */
+  static final int MAX_NAME_LENGTH = 20;
+  /** プレイヤー名に使う文字 */
+  static final String NAME_CHARS = "abcXYZ019 _-éü名人";
+
+  /**
+   * 書き込んだ対局
+   */
+  static class Game {
+    /** 開始局面 */
+    BitBoard start;
+    /** 最後の手（反則で終わる対局では反則の手）の前の盤面 */
+    BitBoard last;
+    String blackName;
+    String whiteName;
+    List<Move> moves = new ArrayList<>();
+    int score;
+    float blackSeconds;
+    float whiteSeconds;
+  }
+
+  /** 書き込んだ対局（書いた順） */
+  List<Game> games = new ArrayList<>();
+  /** 読み戻した棋譜ファイルの大きさ */
+  long bytes;
+  /** 最初の食い違い（なければnull） */
+  String failure;
+
+  public static void main(String args[]) throws IOException {
+    var games = 3000;
+    var runs = 3;
+    var seed = 0L;
+    for (int i = 0; i + 1 < args.length; i += 2) {
+      switch (args[i]) {
+      case "-games": games = Integer.parseInt(args[i + 1]); break;
+      case "-runs": runs = Integer.parseInt(args[i + 1]); break;
+      case "-seed": seed = Long.parseLong(args[i + 1]); break;
+      default: throw new IllegalArgumentException("unknown option: " + args[i]);
+      }
+    }
+
+    var check = new MyGameRecordCheck();
+    var rand = new Random(seed);
+    var path = Files.createTempFile("games", ".rec");
+    boolean ok;
+    try {
+      Files.delete(path);
+      for (int r = 0; r < runs; r++) check.write(rand, path, games * (r + 1) / runs - games * r / runs);
+      ok = check.read(path) && check.rejectsForeignFile(path);
+    } finally {
+      Files.deleteIfExists(path);
+    }
+    System.out.printf("%d games, %d runs, %d bytes: %s\n", games, runs, check.bytes, ok ? "ok" : "NG");
+    if (ok == false) {
+      System.out.println(check.failure);
+      System.exit(1);
+    }
+  }
+
+  /**
+   * 棋譜ファイルを開いて指定された数の対局を書き込む（ファイルがあれば追記になる）
+   */
+  void write(Random rand, Path path, int count) throws IOException {
+    try (var writer = new MyGameRecordWriter(path)) {
+      for (int i = 0; i < count; i++) {
+        var game = randomGame(rand, this.games.size());
+        writer.write(game.start, game.blackName, game.whiteName, game.moves,
+            game.score, game.blackSeconds, game.whiteSeconds);
+        this.games.add(game);
+      }
+    }
+  }
+
+  /**
+   * 乱数で対局を作る
+   * @param g 対局の番号（障害物を置くか、反則で終わるかを決める）
+   */
+  static Game randomGame(Random rand, int g) {
+    var game = new Game();
+    var board = new BitBoard();
+    if (g % BLOCKED_GAME_INTERVAL == 0) {
+      for (int i = rand.nextInt(MAX_BLOCKS + 1); i > 0; i--) {
+        int k = rand.nextInt(LENGTH);
+        if (board.get(k) == NONE) board.set(k, BLOCK);
+      }
+    }
+    for (int i = rand.nextInt(MAX_OPENING_MOVES + 1); i > 0 && board.isEnd() == false; i--)
+      board = board.placed(randomMove(rand, board));
+    game.start = board.clone();
+
+    // 反則で終わる対局は途中で打ち切る
+    int length = g % FOUL_GAME_INTERVAL == 0 ? rand.nextInt(LENGTH) : Integer.MAX_VALUE;
+    while (board.isEnd() == false && game.moves.size() < length) {
+      var move = randomMove(rand, board);
+      game.moves.add(move);
+      board = board.placed(move);
+    }
+    game.last = board.clone();
+    if (board.isEnd() == false) {
+      var turn = board.getTurn();
+      var fouls = new Move[] { Move.ofTimeout(turn), Move.ofIllegal(turn), Move.ofError(turn) };
+      game.moves.add(fouls[rand.nextInt(fouls.length)]);
+      board.foul(turn);
+    }
+
+    game.score = board.score();
+    game.blackName = randomName(rand);
+    game.whiteName = randomName(rand);
+    game.blackSeconds = rand.nextFloat() * 60;
+    game.whiteSeconds = rand.nextFloat() * 60;
+    return game;
+  }
+
+  /**
+   * 合法手（パスを含む）から乱数で1手選ぶ
+   */
+  static Move randomMove(Random rand, Board board) {
+    var moves = board.findLegalMoves(board.getTurn());
+    return moves.get(rand.nextInt(moves.size()));
+  }
+
+  /**
+   * 乱数で長さと文字を選んだプレイヤー名を作る
+   */
+  static String randomName(Random rand) {
+    var name = new StringBuilder();
+    for (int i = rand.nextInt(MAX_NAME_LENGTH + 1); i > 0; i--)
+      name.append(NAME_CHARS.charAt(rand.nextInt(NAME_CHARS.length())));
+    return name.toString();
+  }
+
+  /**
+   * 棋譜ファイルを読み戻し、書き込んだ対局と比べる
+   * @return すべて一致すればtrue
+   */
+  boolean read(Path path) throws IOException {
+    this.bytes = Files.size(path);
+    int g = 0;
+    try (var reader = new MyGameRecordReader(path)) {
+      for (; reader.next(); g++) {
+        if (g >= this.games.size()) return fail(g, "extra record");
+        if (compare(reader, this.games.get(g), g) == false) return false;
+      }
+    }
+    if (g != this.games.size()) return fail(g, "record count " + g + ", written " + this.games.size());
+    return true;
+  }
+
+  /**
+   * 読んでいるレコードを書き込んだ対局と比べる
+   * @param game 対局の番号（食い違いの報告に使う）
+   * @return 一致すればtrue
+   */
+  boolean compare(MyGameRecordReader reader, Game expected, int game) {
+    if (reader.score() != expected.score) return fail(game, "score " + reader.score());
+    var last = expected.moves.isEmpty() ? null : expected.moves.get(expected.moves.size() - 1);
+    int end = last == null ? END_NORMAL : last.isTimeout() ? END_TIMEOUT
+        : last.isIllega() ? END_ILLEGAL : last.isError() ? END_ERROR : END_NORMAL;
+    if (reader.end() != end) return fail(game, "end " + reader.end());
+    if (reader.blackSeconds() != expected.blackSeconds) return fail(game, "black seconds " + reader.blackSeconds());
+    if (reader.whiteSeconds() != expected.whiteSeconds) return fail(game, "white seconds " + reader.whiteSeconds());
+    if (reader.turn() != expected.start.getTurn()) return fail(game, "turn " + reader.turn());
+    var board = reader.initialBoard();
+    if (board.equals(expected.start) == false || board.getTurn() != expected.start.getTurn())
+      return fail(game, "initial board\n" + board);
+    if (reader.blackName().equals(expected.blackName) == false)
+      return fail(game, "black name \"" + reader.blackName() + "\"");
+    if (reader.whiteName().equals(expected.whiteName) == false)
+      return fail(game, "white name \"" + reader.whiteName() + "\"");
+    if (reader.moveCount() != expected.moves.size()) return fail(game, "move count " + reader.moveCount());
+
+    for (int i = 0; i < reader.moveCount(); i++) {
+      var move = expected.moves.get(i);
+      int k = reader.move(i);
+      if (k != move.getIndex()) return fail(game, "move " + i + " " + Move.toIndexString(k));
+      if (reader.isFoul(i) != move.isFoul()) return fail(game, "isFoul " + i);
+      if (reader.isFoul(i)) break;
+      var turn = board.getTurn();
+      board = board.placed(k == Move.PASS ? Move.ofPass(turn) : BitBoard.moveOf(k, turn));
+    }
+    if (board.equals(expected.last) == false) return fail(game, "replayed board\n" + board);
+    return true;
+  }
+
+  /**
+   * 棋譜ファイルでないファイルに追記しようとすると IOException になることを確かめる
+   * @return IOException になればtrue
+   */
+  boolean rejectsForeignFile(Path path) throws IOException {
+    Files.write(path, new byte[] { 0, 1, 2, 3, 4, 5, 6, 7 });
+    try {
+      new MyGameRecordWriter(path).close();
+      return fail(-1, "writer accepted a foreign file");
+    } catch (IOException e) {
+      return true;
+    }
+  }
+
+  /**
+   * 食い違いを記録する
+   * @param game 対局の番号（ファイル全体の検査では -1）
+   * @return 常にfalse
+   */
+  boolean fail(int game, String what) {
+    this.failure = String.format("game %d: %s differs", game, what);
+    if (game >= 0 && game < this.games.size()) {
+      var expected = this.games.get(game);
+      this.failure += String.format("\nwritten: %s vs %s, score %d, %d moves %s\n%s",
+          expected.blackName, expected.whiteName, expected.score, expected.moves.size(), expected.moves,
+          expected.start);
+    }
+    return false;
+  }
+}
@@ -0,0 +1,213 @@
+package myplayer;
+
+import static ap25.Board.*;
+import static ap25.Color.*;
+import static myplayer.MyGameRecordWriter.*;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+import ap25.*;
+
+/**
+ * MyGameRecordWriter で書いた棋譜ファイルを読むクラス
+ * ファイルをメモリにマップし、next で次のレコードに進んで、各項目をマップした領域から直接読む。
+ * 手は Move を作らずに位置の値として返すので、大量の対局を少ないヒープ確保で走査できる。
+ * 大きなファイルは WINDOW_BYTES ずつマップし、レコードが窓をはみ出したらその位置からマップし直す。
+ *
+ * 使い方：
+ *   try (var reader = new MyGameRecordReader(path)) {
+ *     while (reader.next()) { ... reader.score() ... reader.move(i) ... }
+ *   }
+ */
+public class MyGameRecordReader implements Closeable {
+  /** 一度にマップする大きさの上限（バイト数） */
+  static final long WINDOW_BYTES = 1L << 30;
+  /** レコード中の項目の位置（レコードの長さの直後からのバイト数） */
+  static final int SCORE = 0, END = 1, BLACK_SECONDS = 2, WHITE_SECONDS = 6,
+      BLACK_MASK = 10, WHITE_MASK = 18, BLOCK_MASK = 26, TURN = 34, NAMES = 35;
+
+  /** 棋譜ファイル */
+  FileChannel channel;
+  /** ファイルの大きさ */
+  long size;
+  /** 現在マップしている領域 */
+  MappedByteBuffer buffer;
+  /** buffer の先頭のファイル上の位置 */
+  long base;
+  /** 次のレコードのファイル上の位置 */
+  long position = HEADER_BYTES;
+  /** 現在のレコードの本体の buffer 上の位置 */
+  int offset;
+  /** 現在のレコードの手の並びの buffer 上の位置 */
+  int movesOffset;
+
+  /**
+   * 棋譜ファイルを開く
+   * @throws IOException 棋譜ファイルでない場合など
+   */
+  public MyGameRecordReader(Path path) throws IOException {
+    checkHeader(path);
+    this.channel = FileChannel.open(path, StandardOpenOption.READ);
+    this.size = this.channel.size();
+  }
+
+  /**
+   * ファイルの先頭が棋譜ファイルのヘッダかどうかを確認する
+   * @throws IOException 棋譜ファイルでない場合
+   */
+  static void checkHeader(Path path) throws IOException {
+    try (var in = new DataInputStream(Files.newInputStream(path))) {
+      if (in.readInt() != MAGIC || in.readShort() != VERSION)
+        throw new IOException("not a game record file: " + path);
+    }
+  }
+
+  /**
+   * ファイル上の pos から n バイトがマップした領域に入るようにする
+   */
+  void map(long pos, int n) throws IOException {
+    if (this.buffer != null && pos >= this.base && pos + n <= this.base + this.buffer.limit())
+      return;
+    if (pos + n > this.size) throw new IOException("truncated record at " + pos);
+    this.base = pos;
+    this.buffer = this.channel.map(FileChannel.MapMode.READ_ONLY, pos,
+        Math.min(WINDOW_BYTES, this.size - pos));
+  }
+
+  /**
+   * 次のレコードに進む
+   * @return レコードがあればtrue、ファイルの終わりならfalse
+   * @throws IOException 最後のレコードが途中で切れている場合など
+   */
+  public boolean next() throws IOException {
+    if (this.position >= this.size) return false;
+    map(this.position, Short.BYTES);
+    int length = this.buffer.getShort((int) (this.position - this.base)) & 0xFFFF;
+    map(this.position, Short.BYTES + length);
+    this.offset = (int) (this.position - this.base) + Short.BYTES;
+    int blackName = this.buffer.get(this.offset + NAMES) & 0xFF;
+    int whiteName = this.buffer.get(this.offset + NAMES + 1 + blackName) & 0xFF;
+    this.movesOffset = this.offset + NAMES + 2 + blackName + whiteName;
+    this.position += Short.BYTES + length;
+    return true;
+  }
+
+  /** 黒から見た最終スコア */
+  public int score() { return this.buffer.get(this.offset + SCORE); }
+  /** 終局の種類（MyGameRecordWriter.END_*） */
+  public int end() { return this.buffer.get(this.offset + END); }
+  /** 黒の思考時間（秒） */
+  public float blackSeconds() { return this.buffer.getFloat(this.offset + BLACK_SECONDS); }
+  /** 白の思考時間（秒） */
+  public float whiteSeconds() { return this.buffer.getFloat(this.offset + WHITE_SECONDS); }
+  /** 開始局面の手番 */
+  public Color turn() { return this.buffer.get(this.offset + TURN) == 0 ? BLACK : WHITE; }
+  /** 手数 */
+  public int moveCount() { return this.buffer.get(this.movesOffset) & 0xFF; }
+
+  /**
+   * i 番目の手の位置を返す
+   * @return 位置、パスの場合は Move.PASS、反則の場合は MyGameRecordWriter.TIMEOUT_INDEX などの
+   *   Move.PASS より小さい値（MyGameRecordWriter.isFoul で判定できる）
+   */
+  public int move(int i) {
+    return decode(this.buffer.get(this.movesOffset + 1 + i) & 0xFF);
+  }
+
+  /**
+   * i 番目の手が反則（時間切れ・反則手・エラー）かどうか
+   */
+  public boolean isFoul(int i) {
+    return MyGameRecordWriter.isFoul(move(i));
+  }
+
+  /** 開始局面 */
+  public BitBoard initialBoard() {
+    var turn = turn();
+    return new BitBoard(this.buffer.getLong(this.offset + BLACK_MASK),
+        this.buffer.getLong(this.offset + WHITE_MASK),
+        this.buffer.getLong(this.offset + BLOCK_MASK),
+        turn == BLACK ? Move.ofPass(NONE) : Move.ofPass(BLACK));
+  }
+
+  /** 黒のプレイヤー名 */
+  public String blackName() {
+    return name(this.offset + NAMES);
+  }
+
+  /** 白のプレイヤー名 */
+  public String whiteName() {
+    return name(this.offset + NAMES + 1 + (this.buffer.get(this.offset + NAMES) & 0xFF));
+  }
+
+  /**
+   * 長さ（1バイト）と UTF-8 のバイト列で書かれた名前を読む
+   */
+  String name(int at) {
+    var bytes = new byte[this.buffer.get(at) & 0xFF];
+    this.buffer.get(at + 1, bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  public void close() throws IOException {
+    this.channel.close();
+  }
+
+  /**
+   * 棋譜ファイルを走査して集計を表示する
+   * 引数：棋譜ファイル
+   */
+  public static void main(String args[]) throws IOException {
+    long t0 = System.nanoTime();
+    long games = 0, moves = 0, blackWins = 0, whiteWins = 0, draws = 0, fouls = 0;
+    var firstMoves = new long[LENGTH];
+    Map<String, long[]> players = new HashMap<>();
+    try (var reader = new MyGameRecordReader(Path.of(args[0]))) {
+      while (reader.next()) {
+        games++;
+        int n = reader.moveCount();
+        moves += n;
+        int score = reader.score();
+        if (score > 0) blackWins++;
+        else if (score < 0) whiteWins++;
+        else draws++;
+        if (reader.end() != END_NORMAL) fouls++;
+        if (n > 0 && reader.move(0) >= 0) firstMoves[reader.move(0)]++;
+
+        // プレイヤーごとの {対局数, 勝ち数, 思考時間(ミリ秒)}
+        var black = players.computeIfAbsent(reader.blackName(), k -> new long[3]);
+        var white = players.computeIfAbsent(reader.whiteName(), k -> new long[3]);
+        black[0]++;
+        white[0]++;
+        if (score > 0) black[1]++;
+        if (score < 0) white[1]++;
+        black[2] += (long) (reader.blackSeconds() * 1000);
+        white[2] += (long) (reader.whiteSeconds() * 1000);
+      }
+    }
+    double seconds = (System.nanoTime() - t0) / 1e9;
+
+    System.out.printf("games %d (%.0f games/s), average %.1f moves\n",
+        games, games / seconds, (double) moves / Math.max(1, games));
+    System.out.printf("black %d, white %d, draw %d, foul %d\n", blackWins, whiteWins, draws, fouls);
+    for (var e : players.entrySet()) {
+      var s = e.getValue();
+      System.out.printf("%-8s games %d, wins %d (%.1f%%), %.1f ms/game\n", e.getKey(),
+          s[0], s[1], 100.0 * s[1] / s[0], (double) s[2] / s[0]);
+    }
+    var first = new StringBuilder("first moves:");
+    for (int k = 0; k < LENGTH; k++)
+      if (firstMoves[k] > 0) first.append(' ').append(Move.toIndexString(k)).append('=').append(firstMoves[k]);
+    System.out.println(first);
+  }
+}
@@ -0,0 +1,204 @@
+package myplayer;
+
+import static ap25.Board.*;
+import static ap25.Color.*;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import ap25.*;
+
+/**
+ * 対局をバイナリ形式の棋譜ファイルに追記するクラス
+ * 棋譜ファイルは先頭のヘッダ（識別子 "MYGR" と版）と、対局ごとのレコードの並びからなる。
+ * レコードの形式（数値はビッグエンディアン）：
+ *   short  以降のレコードの長さ（バイト数）
+ *   byte   黒から見たスコア
+ *   byte   終局の種類（0:通常, 1:時間切れ, 2:反則手, 3:エラー）
+ *   float  黒の思考時間（秒）
+ *   float  白の思考時間（秒）
+ *   long   開始局面の黒石のマスク
+ *   long   開始局面の白石のマスク
+ *   long   開始局面の障害物のマスク
+ *   byte   開始局面の手番（0:黒, 1:白）
+ *   byte + bytes  黒のプレイヤー名（UTF-8）
+ *   byte + bytes  白のプレイヤー名（UTF-8）
+ *   byte   手数
+ *   bytes  手（1手1バイト。下の表の値）
+ * 手の値と、MyGameRecordReader.move が返す位置（decode）の対応：
+ *   0 〜 LENGTH-1  石を置いた位置 → そのまま
+ *   0x3F  パス → Move.PASS
+ *   0x3E  時間切れ → TIMEOUT_INDEX（Move.ofTimeout の位置）
+ *   0x3D  反則手 → ILLEGAL_INDEX（Move.ofIllegal の位置）
+ *   0x3C  エラー → ERROR_INDEX（Move.ofError の位置）
+ * 反則の3つは Move.PASS より小さく、isFoul で判定できる。反則は最後の手にしか現れない。
+ * 手の色は開始局面の手番から交互に決まるので記録しない。
+ * 複数のスレッドから同時に write を呼んでもよい。
+ */
+public class MyGameRecordWriter implements Closeable {
+  /** ファイルの先頭の識別子（"MYGR"） */
+  static final int MAGIC = 0x4D594752;
+  /** 棋譜ファイルの形式の版 */
+  static final short VERSION = 1;
+  /** ヘッダの大きさ（バイト数） */
+  static final int HEADER_BYTES = Integer.BYTES + Short.BYTES;
+  /** パスを表す手の値 */
+  static final int PASS = 0x3F;
+  /** 時間切れを表す手の値 */
+  static final int TIMEOUT = 0x3E;
+  /** 反則手を表す手の値 */
+  static final int ILLEGAL = 0x3D;
+  /** エラーを表す手の値 */
+  static final int ERROR = 0x3C;
+  /** 時間切れの手を decode した位置（Move.ofTimeout の位置と同じ値） */
+  public static final int TIMEOUT_INDEX = Move.ofTimeout(NONE).getIndex();
+  /** 反則手を decode した位置（Move.ofIllegal の位置と同じ値） */
+  public static final int ILLEGAL_INDEX = Move.ofIllegal(NONE).getIndex();
+  /** エラーの手を decode した位置（Move.ofError の位置と同じ値） */
+  public static final int ERROR_INDEX = Move.ofError(NONE).getIndex();
+  /** 終局の種類：通常の終局 */
+  static final int END_NORMAL = 0;
+  /** 終局の種類：時間切れ */
+  static final int END_TIMEOUT = 1;
+  /** 終局の種類：反則手 */
+  static final int END_ILLEGAL = 2;
+  /** 終局の種類：エラー */
+  static final int END_ERROR = 3;
+
+  /** 書き込み先 */
+  OutputStream out;
+  /** 書き込んだ対局の数 */
+  int count;
+
+  /**
+   * 棋譜ファイルを開く
+   * ファイルがなければヘッダを書いて作成し、あれば末尾に追記する
+   * @throws IOException 既存のファイルが棋譜ファイルでない場合など
+   */
+  public MyGameRecordWriter(Path path) throws IOException {
+    var exists = Files.exists(path) && Files.size(path) > 0;
+    if (exists) MyGameRecordReader.checkHeader(path);
+    this.out = new BufferedOutputStream(Files.newOutputStream(path,
+        StandardOpenOption.CREATE, StandardOpenOption.APPEND), 1 << 16);
+    if (exists == false) {
+      var header = new DataOutputStream(this.out);
+      header.writeInt(MAGIC);
+      header.writeShort(VERSION);
+    }
+  }
+
+  /**
+   * 終了した対局を1レコードとして書き込む
+   * @param game 対局（プレイヤー、手の履歴、思考時間を使う）
+   * @param end 最終盤面
+   */
+  public void write(MyGame game, Board end) throws IOException {
+    write(game.initialBoard, game.players.get(BLACK).toString(), game.players.get(WHITE).toString(),
+        game.moves, end.score(), game.clock.seconds(BLACK), game.clock.seconds(WHITE));
+  }
+
+  /**
+   * 対局を1レコードとして書き込む
+   * @param start 開始局面
+   * @param blackName 黒のプレイヤー名
+   * @param whiteName 白のプレイヤー名
+   * @param moves 手の履歴
+   * @param score 黒から見た最終スコア
+   * @param blackSeconds 黒の思考時間（秒）
+   * @param whiteSeconds 白の思考時間（秒）
+   */
+  public void write(Board start, String blackName, String whiteName, List<Move> moves,
+      int score, float blackSeconds, float whiteSeconds) throws IOException {
+    var bytes = new ByteArrayOutputStream(64 + moves.size());
+    var record = new DataOutputStream(bytes);
+    var initial = BitBoard.of(start);
+    var last = moves.isEmpty() ? null : moves.get(moves.size() - 1);
+
+    record.writeByte(score);
+    record.writeByte(last == null ? END_NORMAL : last.isTimeout() ? END_TIMEOUT
+        : last.isIllega() ? END_ILLEGAL : last.isError() ? END_ERROR : END_NORMAL);
+    record.writeFloat(blackSeconds);
+    record.writeFloat(whiteSeconds);
+    record.writeLong(initial.black);
+    record.writeLong(initial.white);
+    record.writeLong(initial.block);
+    record.writeByte(start.getTurn() == BLACK ? 0 : 1);
+    writeName(record, blackName);
+    writeName(record, whiteName);
+    if (moves.size() > 255) throw new IllegalArgumentException("too many moves: " + moves.size());
+    record.writeByte(moves.size());
+    for (var move : moves) record.writeByte(encode(move));
+
+    synchronized (this) {
+      var header = new DataOutputStream(this.out);
+      header.writeShort(bytes.size());
+      bytes.writeTo(this.out);
+      this.count++;
+    }
+  }
+
+  /**
+   * プレイヤー名を長さ（1バイト）と UTF-8 のバイト列で書き込む。255 バイトを超える部分は切り捨てる
+   */
+  static void writeName(DataOutputStream out, String name) throws IOException {
+    var bytes = name.getBytes(StandardCharsets.UTF_8);
+    int n = Math.min(bytes.length, 255);
+    out.writeByte(n);
+    out.write(bytes, 0, n);
+  }
+
+  /**
+   * 手を1バイトの値に変換する
+   */
+  static int encode(Move move) {
+    if (move.isPass()) return PASS;
+    if (move.isTimeout()) return TIMEOUT;
+    if (move.isIllega()) return ILLEGAL;
+    if (move.isError()) return ERROR;
+    return move.getIndex();
+  }
+
+  /**
+   * 1バイトの値を手の位置（Move のインデックス）に変換する
+   * @return 位置、またはパスの場合 Move.PASS、反則の場合は TIMEOUT_INDEX, ILLEGAL_INDEX, ERROR_INDEX
+   * @throws IllegalArgumentException 手を表さない値の場合
+   */
+  static int decode(int code) {
+    if (code < LENGTH) return code;
+    switch (code) {
+    case PASS: return Move.PASS;
+    case TIMEOUT: return TIMEOUT_INDEX;
+    case ILLEGAL: return ILLEGAL_INDEX;
+    case ERROR: return ERROR_INDEX;
+    default: throw new IllegalArgumentException("invalid move code: " + code);
+    }
+  }
+
+  /**
+   * decode した位置が反則（時間切れ・反則手・エラー）の手かどうか
+   * 反則の手は盤面に打てないので、棋譜を再生するときはその手の前で止めること
+   */
+  public static boolean isFoul(int index) {
+    return index < Move.PASS;
+  }
+
+  /**
+   * バッファの内容をファイルに書き出す
+   */
+  public synchronized void flush() throws IOException {
+    this.out.flush();
+  }
+
+  public synchronized void close() throws IOException {
+    this.out.close();
+  }
+}
@@ -0,0 +1,263 @@
+package myplayer;
+
+import static ap25.Board.*;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+
+import ap25.*;
+
+/**
+ * 盤面の形（一辺のマス数と障害物の配置）と、その形に対する半直線（レイ）と隣接マスの表
+ * 表は形ごとに一度だけ計算して of でキャッシュするので、同じ形の盤面はすべて同じインスタンスを共有する。
+ * 一辺は MAX_SIZE 以下に限るので、どの形でも盤面全体が64ビットのマスク1つに収まり、
+ * 合法手の生成と石の反転をマスクの演算で行える（ap25 の標準の大きさは STANDARD）。
+ * 位置の番号は 行 * size + 列、方向の番号は BitBoard.shift と同じく
+ * 0:上、1:右上、2:右、3:右下、4:下、5:左下、6:左、7:左上。
+ * 半直線は障害物の手前で止める。表は変更しないこと。
+ */
+public class MyGeometry {
+  /** 方向の数 */
+  public static final int DIRECTIONS = 8;
+  /** 方向ごとの列の増分 */
+  static final int[] COL_STEPS = { 0, 1, 1, 1, 0, -1, -1, -1 };
+  /** 方向ごとの行の増分 */
+  static final int[] ROW_STEPS = { -1, -1, 0, 1, 1, 1, 0, -1 };
+  /** 一辺のマス数の下限 */
+  public static final int MIN_SIZE = 4;
+  /** 一辺のマス数の上限（盤面が64ビットに収まる大きさ） */
+  public static final int MAX_SIZE = 8;
+
+  /** 作成済みの形（キーは "一辺/障害物のマスク"） */
+  static final Map<String, MyGeometry> CACHE = new ConcurrentHashMap<>();
+  /** ap25 の標準の大きさで障害物のない形 */
+  public static final MyGeometry STANDARD = of(SIZE, 0);
+
+  /** 一辺のマス数 */
+  public final int size;
+  /** 総マス数 */
+  public final int length;
+  /** 障害物のマスク */
+  public final long blocks;
+  /** 盤面全体のマスク */
+  public final long full;
+  /** 左端の列以外のマスク */
+  final long notLeft;
+  /** 右端の列以外のマスク */
+  final long notRight;
+  /** 初期配置の黒石のマスク */
+  public final long initialBlack;
+  /** 初期配置の白石のマスク */
+  public final long initialWhite;
+  /** [位置][方向] の半直線上のマスの位置（近い順、始点は含まない） */
+  public final int[][][] rays;
+  /** [位置][方向] の半直線上のマスのマスク */
+  public final long[][] rayMasks;
+  /** [位置] に隣接するマスの位置（障害物は含まない） */
+  public final int[][] neighbors;
+  /** [位置] に隣接するマスのマスク（障害物は含まない） */
+  public final long[] neighborMasks;
+
+  /**
+   * 形を作成し、表を計算する
+   * @param size 一辺のマス数
+   * @param blocks 障害物のマスク
+   */
+  MyGeometry(int size, long blocks) {
+    this.size = size;
+    this.length = size * size;
+    this.blocks = blocks;
+    this.full = this.length == 64 ? -1L : (1L << this.length) - 1;
+
+    long left = 0, right = 0;
+    for (int row = 0; row < size; row++) {
+      left |= 1L << index(0, row);
+      right |= 1L << index(size - 1, row);
+    }
+    this.notLeft = this.full & ~left;
+    this.notRight = this.full & ~right;
+
+    int c = size / 2;
+    this.initialBlack = 1L << index(c - 1, c - 1) | 1L << index(c, c);
+    this.initialWhite = 1L << index(c, c - 1) | 1L << index(c - 1, c);
+
+    this.rays = new int[this.length][DIRECTIONS][];
+    this.rayMasks = new long[this.length][DIRECTIONS];
+    this.neighbors = new int[this.length][];
+    this.neighborMasks = new long[this.length];
+    var buf = new int[size];
+    for (int k = 0; k < this.length; k++) {
+      int col0 = k % size, row0 = k / size;
+      var adjacent = new int[DIRECTIONS];
+      int m = 0;
+      for (int dir = 0; dir < DIRECTIONS; dir++) {
+        int n = 0;
+        for (int col = col0 + COL_STEPS[dir], row = row0 + ROW_STEPS[dir];
+            isValid(col, row) && (blocks >>> index(col, row) & 1) == 0;
+            col += COL_STEPS[dir], row += ROW_STEPS[dir]) {
+          buf[n++] = index(col, row);
+          this.rayMasks[k][dir] |= 1L << index(col, row);
+        }
+        this.rays[k][dir] = Arrays.copyOf(buf, n);
+        if (n > 0) {
+          adjacent[m++] = buf[0];
+          this.neighborMasks[k] |= 1L << buf[0];
+        }
+      }
+      this.neighbors[k] = Arrays.copyOf(adjacent, m);
+    }
+  }
+
+  /**
+   * 指定された大きさで障害物のない形を取得する
+   * @param size 一辺のマス数（MIN_SIZE 以上 MAX_SIZE 以下の偶数）
+   */
+  public static MyGeometry of(int size) {
+    return of(size, 0);
+  }
+
+  /**
+   * 指定された大きさと障害物の配置の形を取得する
+   * 同じ引数に対しては同じインスタンスを返す
+   * @param size 一辺のマス数（MIN_SIZE 以上 MAX_SIZE 以下の偶数）
+   * @param blocks 障害物のマスク（初期配置のマスに置いた障害物は、初期配置の石で上書きされる）
+   * @throws IllegalArgumentException 大きさや障害物の配置が正しくない場合
+   */
+  public static MyGeometry of(int size, long blocks) {
+    if (size < MIN_SIZE || size > MAX_SIZE || size % 2 != 0)
+      throw new IllegalArgumentException("unsupported board size: " + size);
+    var key = size + "/" + Long.toHexString(blocks);
+    var geometry = CACHE.get(key);
+    if (geometry != null) return geometry;
+
+    geometry = new MyGeometry(size, blocks);
+    if ((blocks & ~geometry.full) != 0)
+      throw new IllegalArgumentException("invalid blocks: " + Long.toHexString(blocks));
+    var other = CACHE.putIfAbsent(key, geometry);
+    return other != null ? other : geometry;
+  }
+
+  /**
+   * 初期配置のマスを避けて、障害物をランダムに配置した形を取得する
+   * @param rand 乱数
+   * @param size 一辺のマス数
+   * @param count 障害物の数
+   */
+  public static MyGeometry random(Random rand, int size, int count) {
+    var empty = of(size);
+    long free = empty.full & ~(empty.initialBlack | empty.initialWhite);
+    if (count > Long.bitCount(free))
+      throw new IllegalArgumentException("too many blocks: " + count);
+    long blocks = 0;
+    while (Long.bitCount(blocks) < count) {
+      int k = rand.nextInt(empty.length);
+      if ((free >>> k & 1) != 0) blocks |= 1L << k;
+    }
+    return of(size, blocks);
+  }
+
+  /**
+   * 列と行から位置の番号を計算する
+   */
+  public int index(int col, int row) {
+    return this.size * row + col;
+  }
+
+  /**
+   * 列と行が盤面の内側かどうかを判定する
+   */
+  public boolean isValid(int col, int row) {
+    return 0 <= col && col < this.size && 0 <= row && row < this.size;
+  }
+
+  /**
+   * ap25 の標準の大きさの形かどうか（BitBoard をそのまま使える形かどうか）
+   */
+  public boolean isStandardSize() {
+    return this.size == SIZE;
+  }
+
+  /**
+   * 位置を "a1" の形式の文字列にする
+   */
+  public String toIndexString(int k) {
+    if (k < 0) return Move.toIndexString(k);
+    return Move.toColString(k % this.size) + Move.toRowString(k / this.size);
+  }
+
+  /**
+   * 指定された方向に1マスずらしたマスクを返す（BitBoard.shift をこの形の大きさにしたもの）
+   * @param x 元のマスク
+   * @param dir 方向（0-7）
+   * @return ずらしたマスク（盤外に出たビットは落とす）
+   */
+  long shift(long x, int dir) {
+    switch (dir) {
+    case 0: return x >>> this.size;
+    case 1: return (x >>> (this.size - 1)) & this.notLeft;
+    case 2: return (x << 1) & this.notLeft;
+    case 3: return (x << (this.size + 1)) & this.notLeft;
+    case 4: return (x << this.size) & this.full;
+    case 5: return (x << (this.size - 1)) & this.notRight;
+    case 6: return (x >>> 1) & this.notRight;
+    default: return (x >>> (this.size + 1)) & this.notRight;
+    }
+  }
+
+  /**
+   * 自石と相手石のマスクから合法手のマスクを計算する
+   * @param own 手番側の石のマスク
+   * @param opp 相手側の石のマスク
+   * @param empty 空きマスのマスク
+   * @return 合法手の位置のマスク
+   */
+  public long legalMask(long own, long opp, long empty) {
+    long legal = 0;
+    for (int dir = 0; dir < DIRECTIONS; dir++) {
+      long t = shift(own, dir) & opp;
+      for (int i = 2; i < this.size - 1; i++) t |= shift(t, dir) & opp;
+      legal |= shift(t, dir) & empty;
+    }
+    return legal;
+  }
+
+  /**
+   * 指定された位置に石を置いたときに反転する石のマスクを、半直線のマスクから計算する
+   * 各方向で、半直線上の相手石でない最初のマスが自石なら、そこまでの相手石が反転する。
+   * 最初のマスは位置の番号が増える向きでは最下位のビット、減る向きでは最上位のビットで求まる。
+   * @param k 石を置く位置
+   * @param own 手番側の石のマスク
+   * @param opp 相手側の石のマスク
+   * @return 反転する石のマスク
+   */
+  public long flips(int k, long own, long opp) {
+    var rays = this.rayMasks[k];
+    return increasing(rays[2], own, opp) | increasing(rays[3], own, opp)
+        | increasing(rays[4], own, opp) | increasing(rays[5], own, opp)
+        | decreasing(rays[0], own, opp) | decreasing(rays[1], own, opp)
+        | decreasing(rays[6], own, opp) | decreasing(rays[7], own, opp);
+  }
+
+  /**
+   * 位置の番号が増える向きの半直線で反転する石のマスクを計算する
+   */
+  static long increasing(long ray, long own, long opp) {
+    long stop = ray & ~opp;
+    long first = stop & -stop;
+    return (first & own) != 0 ? ray & (first - 1) : 0;
+  }
+
+  /**
+   * 位置の番号が減る向きの半直線で反転する石のマスクを計算する
+   */
+  static long decreasing(long ray, long own, long opp) {
+    long first = Long.highestOneBit(ray & ~opp);
+    return (first & own) != 0 ? ray & -(first << 1) : 0;
+  }
+
+  public String toString() {
+    return this.size + "x" + this.size + (this.blocks == 0 ? "" : " blocks " + Long.bitCount(this.blocks));
+  }
+}
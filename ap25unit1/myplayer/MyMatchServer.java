@@ -0,0 +1,397 @@
+package myplayer;
+
+import static ap25.Color.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import ap25.*;
+
+/**
+ * 多数の対戦を同時に進めるローカルの対戦サーバ
+ * 名前で登録したプレイヤーのファクトリから対戦ごとに新しいプレイヤーを作り、1対戦を1スレッドで進める。
+ * 対戦のスレッドは仮想スレッドが使えれば仮想スレッド、使えなければスタックを小さくしたデーモンスレッドにする
+ * （仮想スレッドの API は Java 21 からなので、リフレクションで取得する）。
+ * プレイヤーの think は対戦のスレッドでは呼ばず、スレッド数を制限したプラットフォームスレッドのプールで実行して
+ * 結果を待つ。CPU を使う探索が仮想スレッドのキャリアを占有せず、対戦数が多くても同時に探索するのはプールの数だけになる。
+ * 対戦のスレッドは synchronized を使わずに待つので、仮想スレッドがキャリアに固定されることもない。
+ * 各手と対戦の結果は購読者に通知する。標準出力には何も出力しない。
+ * 持ち時間と反則の扱いは MyGame と同じで、持ち時間には think の実行時間だけを数え、プールの待ち時間は数えない。
+ * think が Error などを投げた場合はエラーの反則負けとし、RuntimeException を投げた場合は対戦が例外で終わる。
+ * think が始まってから残り時間を過ぎても戻らなければ、割り込んで時間切れの反則負けとし、対戦のスレッドは先に進む
+ * （プレイヤーは対戦ごとに作るので、時間切れになったプレイヤーが後で呼ばれることはない）。
+ * 対戦が終わったら、AutoCloseable なプレイヤーは閉じる。
+ */
+public class MyMatchServer implements AutoCloseable {
+  /** 仮想スレッドを作るファクトリ（使えない環境ではnull） */
+  static final ThreadFactory VIRTUAL_THREADS = virtualThreadFactory();
+  /** 仮想スレッドが使えない場合の、対戦のスレッドのスタックの大きさ（バイト） */
+  static final long FALLBACK_STACK_BYTES = 256 * 1024;
+  /** think が待ち行列にいる間に、始まったかどうかを確かめ直す間隔の下限（ナノ秒） */
+  static final long QUEUE_POLL_NANOS = 1_000_000L;
+  /** 1局の最大手数（パスと反則を含む） */
+  static final int MAX_MOVES = 2 * Board.LENGTH + 2;
+
+  /** 名前ごとのプレイヤーのファクトリ */
+  Map<String, MyTournament.PlayerFactory> registry = new ConcurrentHashMap<>();
+  /** 購読者 */
+  List<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+  /** 対戦のスレッドを作るファクトリ */
+  ThreadFactory gameThreads;
+  /** think を実行するプール */
+  ExecutorService searchPool;
+  /** 1ゲームの持ち時間（秒） */
+  float timeLimitSeconds = MyGame.TIME_LIMIT_SECONDS;
+  /** 次の対戦の番号 */
+  AtomicInteger nextId = new AtomicInteger();
+  /** 進行中の対戦の数 */
+  AtomicInteger running = new AtomicInteger();
+  /** 同時に進行していた対戦の数の最大値 */
+  AtomicInteger peakRunning = new AtomicInteger();
+  /** 全対戦の手の数の合計 */
+  AtomicLong moveCount = new AtomicLong();
+
+  /**
+   * 利用できるプロセッサの数のスレッドで think を実行するサーバを作る
+   */
+  public MyMatchServer() {
+    this(Runtime.getRuntime().availableProcessors());
+  }
+
+  /**
+   * think を実行するスレッド数を指定してサーバを作る
+   * @param searchThreads think を同時に実行するスレッドの数
+   */
+  public MyMatchServer(int searchThreads) {
+    this.gameThreads = VIRTUAL_THREADS != null ? VIRTUAL_THREADS : r -> {
+      var thread = new Thread(null, r, "match", FALLBACK_STACK_BYTES);
+      thread.setDaemon(true);
+      return thread;
+    };
+    this.searchPool = Executors.newFixedThreadPool(Math.max(1, searchThreads), r -> {
+      var thread = new Thread(r, "match-search");
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+  /**
+   * 仮想スレッドのファクトリを取得する（Thread.ofVirtual().factory() をリフレクションで呼ぶ）
+   * @return ファクトリ。仮想スレッドが使えない Java のバージョンや設定ではnull
+   */
+  static ThreadFactory virtualThreadFactory() {
+    try {
+      var builder = Thread.class.getMethod("ofVirtual").invoke(null);
+      return (ThreadFactory) Class.forName("java.lang.Thread$Builder").getMethod("factory").invoke(builder);
+    } catch (ReflectiveOperationException | RuntimeException e) {
+      return null;
+    }
+  }
+
+  /**
+   * 対戦のスレッドが仮想スレッドかどうか
+   */
+  public boolean usesVirtualThreads() {
+    return VIRTUAL_THREADS != null && this.gameThreads == VIRTUAL_THREADS;
+  }
+
+  /**
+   * 1ゲームの持ち時間（秒）を設定する
+   */
+  public MyMatchServer timeLimit(float seconds) {
+    this.timeLimitSeconds = seconds;
+    return this;
+  }
+
+  /**
+   * プレイヤーのファクトリを名前で登録する（同じ名前なら置き換える）
+   */
+  public void register(String name, MyTournament.PlayerFactory factory) {
+    this.registry.put(name, factory);
+  }
+
+  /**
+   * 購読者を追加する
+   */
+  public void subscribe(Subscriber subscriber) {
+    this.subscribers.add(subscriber);
+  }
+
+  /**
+   * 購読者を取り除く
+   */
+  public void unsubscribe(Subscriber subscriber) {
+    this.subscribers.remove(subscriber);
+  }
+
+  /**
+   * 登録された名前のプレイヤー同士の対戦を開始する
+   * @param black 黒のプレイヤーの名前
+   * @param white 白のプレイヤーの名前
+   * @param seed プレイヤーを作る乱数の種（黒に seed、白に seed + 1 を渡す）
+   * @return 開始した対戦
+   * @throws IllegalArgumentException 登録されていない名前の場合
+   */
+  public Match start(String black, String white, long seed) {
+    var blackFactory = factory(black);
+    var whiteFactory = factory(white);
+    var match = new Match(this.nextId.getAndIncrement(), black, white);
+    int n = this.running.incrementAndGet();
+    this.peakRunning.accumulateAndGet(n, Math::max);
+    this.gameThreads.newThread(() -> {
+      try {
+        var end = play(match, blackFactory.create(BLACK, seed), whiteFactory.create(WHITE, seed + 1));
+        this.running.decrementAndGet();
+        for (var subscriber : this.subscribers) subscriber.finished(match, end);
+        match.result.complete(end);
+      } catch (Throwable e) {
+        this.running.decrementAndGet();
+        match.result.completeExceptionally(e);
+      }
+    }).start();
+    return match;
+  }
+
+  MyTournament.PlayerFactory factory(String name) {
+    var factory = this.registry.get(name);
+    if (factory == null) throw new IllegalArgumentException("unknown player: " + name);
+    return factory;
+  }
+
+  /**
+   * 1対戦を終局まで進め、AutoCloseable なプレイヤーを閉じる（対戦のスレッドで実行する）
+   * @return 終局の盤面
+   */
+  Board play(Match match, Player black, Player white) throws InterruptedException {
+    try {
+      return playMoves(match, black, white);
+    } finally {
+      MyTournament.close(black);
+      MyTournament.close(white);
+    }
+  }
+
+  /**
+   * 1対戦を終局まで進める
+   * @return 終局の盤面
+   */
+  Board playMoves(Match match, Player black, Player white) throws InterruptedException {
+    Board board = new BitBoard();
+    black.setBoard(board.clone());
+    white.setBoard(board.clone());
+    long limit = (long) (this.timeLimitSeconds * 1e9);
+
+    while (board.isEnd() == false) {
+      var turn = board.getTurn();
+      var player = turn == BLACK ? black : white;
+      var position = board.clone();
+      int side = turn == BLACK ? 0 : 1;
+      long remaining = Math.max(0, limit - match.nanos[side]);
+      var start = new AtomicLong();
+      var nanos = new AtomicLong(-1);
+      Future<Move> future;
+      try {
+        future = this.searchPool.submit(() -> {
+          long t0 = System.nanoTime();
+          start.set(t0);
+          if (player instanceof MyClock.DeadlineAware)
+            ((MyClock.DeadlineAware) player).setDeadline(t0 + remaining);
+          try {
+            return player.think(position);
+          } finally {
+            nanos.set(System.nanoTime() - t0);
+          }
+        });
+      } catch (RejectedExecutionException e) {
+        throw new IllegalStateException("server closed", e);
+      }
+
+      Move move;
+      try {
+        move = await(future, start, remaining);
+        move = move == null ? Move.ofIllegal(turn) : move.colored(turn);
+      } catch (TimeoutException e) {
+        future.cancel(true);
+        move = Move.ofTimeout(turn);
+      } catch (ExecutionException e) {
+        // MyGame.think と同じく、RuntimeException はそのまま投げて対戦を例外で終える
+        if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+        move = Move.ofError(turn);
+      } catch (CancellationException e) {
+        throw new IllegalStateException("server closed", e);
+      }
+
+      // 時間切れで打ち切った場合は、think を始めてから打ち切るまでを数える
+      match.nanos[side] += nanos.get() >= 0 ? nanos.get() : System.nanoTime() - start.get();
+      if (move.isTimeout() || match.nanos[side] > limit) move = Move.ofTimeout(turn);
+      else if (move.isLegal() && board.isLegalMove(move) == false) move = Move.ofIllegal(turn);
+      match.moves[match.count++] = move;
+      this.moveCount.incrementAndGet();
+
+      if (move.isLegal()) board = board.placed(move);
+      else board.foul(turn);
+      for (var subscriber : this.subscribers) subscriber.moved(match, move, board);
+      if (move.isLegal() == false) break;
+    }
+    return board;
+  }
+
+  /**
+   * think の結果を、think が始まってから remaining ナノ秒まで待つ
+   * プールの待ち行列にいる間は時間を数えず、始まったかどうかを remaining ごとに確かめ直す。
+   * @param start think を始めた時刻を入れる変数（始まるまでは0）
+   * @throws TimeoutException think を始めてから remaining ナノ秒を過ぎても終わらない場合
+   */
+  static Move await(Future<Move> future, AtomicLong start, long remaining)
+      throws InterruptedException, ExecutionException, TimeoutException {
+    while (true) {
+      long t0 = start.get();
+      long wait = t0 == 0 ? Math.max(remaining, QUEUE_POLL_NANOS) : t0 + remaining - System.nanoTime();
+      try {
+        return future.get(Math.max(0, wait), TimeUnit.NANOSECONDS);
+      } catch (TimeoutException e) {
+        if (t0 != 0 || start.get() != 0 && System.nanoTime() - start.get() >= remaining) throw e;
+      }
+    }
+  }
+
+  /**
+   * think のプールを止める。実行中の think には割り込み、待ち行列の think は取り消す。
+   * 進行中の対戦は例外で終わる（Match.join が例外を投げる）
+   */
+  public void close() {
+    for (var task : this.searchPool.shutdownNow())
+      if (task instanceof Future) ((Future<?>) task).cancel(false);
+  }
+
+  /**
+   * 1つの対戦
+   * 手は Move の配列に、思考時間は色ごとの合計だけを持つので、プレイヤーを除く1対戦のメモリは1KB程度になる。
+   */
+  public static class Match {
+    /** 対戦の番号 */
+    public final int id;
+    /** 黒のプレイヤーの名前 */
+    public final String black;
+    /** 白のプレイヤーの名前 */
+    public final String white;
+    /** 手（count 個まで有効） */
+    final Move[] moves = new Move[MAX_MOVES];
+    /** 手の数 */
+    int count;
+    /** 色ごとの思考時間の合計（ナノ秒。[0:黒, 1:白]） */
+    final long[] nanos = new long[2];
+    /** 終局の盤面 */
+    final CompletableFuture<Board> result = new CompletableFuture<>();
+
+    Match(int id, String black, String white) {
+      this.id = id;
+      this.black = black;
+      this.white = white;
+    }
+
+    /** これまでの手 */
+    public List<Move> moves() {
+      return Arrays.asList(Arrays.copyOf(this.moves, this.count));
+    }
+
+    /** 終局の盤面を返す（終局まで待つ） */
+    public Board join() {
+      return this.result.join();
+    }
+
+    /** 終局したときに終局の盤面で完了する */
+    public CompletableFuture<Board> result() {
+      return this.result;
+    }
+
+    public String toString() {
+      return String.format("#%d %s vs %s", this.id, this.black, this.white);
+    }
+  }
+
+  /**
+   * 対戦の進行を受け取る購読者
+   * 対戦のスレッドから呼ばれるので、すぐに戻ること。複数の対戦から同時に呼ばれることがある
+   */
+  public interface Subscriber {
+    /**
+     * 手が打たれた（反則の場合は反則を表す手）
+     * @param match 対戦
+     * @param move 手
+     * @param board 手を反映した盤面
+     */
+    default void moved(Match match, Move move, Board board) {}
+
+    /**
+     * 対戦が終わった
+     * @param match 対戦
+     * @param board 終局の盤面
+     */
+    default void finished(Match match, Board board) {}
+  }
+
+  /**
+   * ランダムプレイヤー同士、または小さな置換表の MyPlayer 同士の対戦を多数同時に行い、
+   * 同時に進行した対戦の数、手の数、ヒープの使用量を表示する
+   * 引数：対戦数（デフォルト 10000）、プレイヤー random|my（デフォルト random）、
+   *       think のスレッド数（デフォルト プロセッサ数）
+   */
+  public static void main(String args[]) {
+    int games = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+    var name = args.length > 1 ? args[1] : "random";
+    int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+
+    try (var server = new MyMatchServer(threads)) {
+      server.register("random", (color, seed) -> new RandomPlayer(color, seed));
+      server.register("my", (color, seed) -> {
+        // 対戦数が多いので、探索と完全読みの置換表を最小にする
+        var player = new MyPlayer(MyPlayer.MY_NAME, color, new MyEval(), 2, 0);
+        player.setEndgameTableMegabytes(0);
+        player.setEndgameEmpties(8);
+        return player;
+      });
+
+      var wins = new AtomicInteger[] { new AtomicInteger(), new AtomicInteger(), new AtomicInteger() };
+      var heap = new AtomicLong();
+      server.subscribe(new Subscriber() {
+        public void finished(Match match, Board board) {
+          wins[board.winner() == BLACK ? 0 : board.winner() == WHITE ? 1 : 2].incrementAndGet();
+          // 半分の対戦が終わった時点のヒープの使用量を記録する
+          if (match.id == games / 2) {
+            var runtime = Runtime.getRuntime();
+            heap.set(runtime.totalMemory() - runtime.freeMemory());
+          }
+        }
+      });
+
+      long t0 = System.nanoTime();
+      var matches = new ArrayList<Match>();
+      for (int i = 0; i < games; i++) matches.add(server.start(name, name, 2L * i));
+      for (var match : matches) match.join();
+      long nanos = System.nanoTime() - t0;
+
+      System.out.printf("%s threads, %d games, peak %d concurrent\n",
+          server.usesVirtualThreads() ? "virtual" : "platform", games, server.peakRunning.get());
+      System.out.printf("black %d  white %d  draw %d\n", wins[0].get(), wins[1].get(), wins[2].get());
+      System.out.printf("%d moves in %.2fs (%.0f moves/s), heap at midpoint %.1f MB\n",
+          server.moveCount.get(), nanos / 1e9, server.moveCount.get() * 1e9 / nanos, heap.get() / 1e6);
+    }
+  }
+}
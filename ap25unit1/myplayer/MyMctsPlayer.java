@@ -0,0 +1,517 @@
+package myplayer;
+
+import static ap25.Board.*;
+import static ap25.Color.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import ap25.*;
+
+/**
+ * モンテカルロ木探索（UCT）で手を選ぶプレイヤー
+ * 各反復で、木を UCB1 の値が最大の子へたどり、訪問回数が EXPAND_VISITS に達した葉を展開し、
+ * そこから RandomPlayer と同じく合法手から一様に選ぶプレイアウトを終局まで行って、結果を経路に戻す。
+ * プレイアウトは BitBoard の play/undo で行い、反復ごとにヒープを確保しない。
+ * 評価関数を与えると、展開時に子の局面の評価値から事前確率を作り、
+ * 訪問の少ない子ほど強く効く補正（progressive bias）として UCB1 の値に加える。
+ * 複数スレッドでは、1つの木を共有してバーチャルロスで別の経路に分かれる方法（tree）と、
+ * スレッドごとに別の木を作ってルートの訪問回数を合計する方法（root）を選べる。
+ * 持ち時間は MyPlayer と同じく、残り時間を残りの手数で割って1手に割り当てる。
+ * 補助スレッドは close で止めるので、スレッド数が2以上のプレイヤーは使い終わったら閉じる。
+ */
+public class MyMctsPlayer extends ap25.Player implements MyClock.DeadlineAware, AutoCloseable {
+  /** プレイヤー名 */
+  static final String MY_NAME = "MC24";
+  /** UCB1 の探索項の係数のデフォルト値 */
+  static final float DEFAULT_EXPLORATION = 1.0f;
+  /** 事前確率による補正の重み */
+  static final float PRIOR_WEIGHT = 1.0f;
+  /** 事前確率を作るときの評価値の温度（評価値の差がこの値なら確率は e 倍違う） */
+  static final float PRIOR_TEMPERATURE = 4.0f;
+  /** 葉を展開するのに必要な訪問回数 */
+  static final int EXPAND_VISITS = 4;
+  /** 木の共有時に、探索中の経路に一時的に加える負けの数 */
+  static final int VIRTUAL_LOSS = 3;
+  /** 時間制御なしのときの1手のプレイアウト数のデフォルト値 */
+  static final int DEFAULT_PLAYOUTS = 20000;
+  /** 経路の長さの上限（パスを含めた1局の最大手数） */
+  static final int MAX_PLY = 2 * LENGTH + 2;
+
+  /** 展開時の事前確率に使う評価関数（null なら一様） */
+  MyEval eval;
+  /** 1ゲームの持ち時間（秒）。0 のときは時間制御を行わず、playoutLimit 回で打ち切る */
+  float timeLimitSeconds;
+  /** 時間制御なしのときの1手のプレイアウト数 */
+  int playoutLimit = DEFAULT_PLAYOUTS;
+  /** UCB1 の探索項の係数 */
+  float exploration = DEFAULT_EXPLORATION;
+  /** true ならスレッドごとに別の木を作り（root 並列）、false なら1つの木を共有する（tree 並列） */
+  boolean rootParallel;
+  /** スレッドごとの乱数（0番は think を呼んだスレッドが使う） */
+  Random[] rands;
+  /** 補助スレッドを実行する Executor（最初に必要になったときに作る） */
+  ExecutorService workers;
+  /** close を呼んだかどうか */
+  boolean closed;
+  /** 全スレッドの探索の停止フラグ（think のスレッドが割り込まれたときに立てる） */
+  AtomicBoolean stop = new AtomicBoolean();
+  /** このゲームで think に使った時間の合計（ナノ秒） */
+  long usedNanos;
+  /** 対局から渡された think の締め切り（System.nanoTime() の値。渡されていなければ Long.MAX_VALUE） */
+  long deadline = Long.MAX_VALUE;
+  /** 直近の think のプレイアウト数（全スレッドの合計） */
+  long playouts;
+  /** 直近の think の時間（ナノ秒） */
+  long nanos;
+  /** このゲームのプレイアウト数の合計 */
+  long gamePlayouts;
+  /** 直近の think で選んだ手のルートから見た勝率 */
+  float winRate;
+
+  /**
+   * 色のみを指定するコンストラクタ。
+   * 評価関数の事前確率を使い、MyGame の持ち時間を1スレッドで使い切る。
+   */
+  public MyMctsPlayer(Color color) {
+    this(MY_NAME, color, MyPatternEval.loadDefault(), MyGame.TIME_LIMIT_SECONDS, 1);
+  }
+
+  /**
+   * すべてのパラメータを指定するコンストラクタ。
+   * @param eval 事前確率に使う評価関数（null なら事前確率を使わない）
+   * @param timeLimitSeconds 1ゲームの持ち時間（秒）。0 なら1手 playoutLimit 回のプレイアウトで打ち切る
+   * @param threads 探索スレッド数
+   */
+  public MyMctsPlayer(String name, Color color, MyEval eval, float timeLimitSeconds, int threads) {
+    super(name, color);
+    this.eval = eval;
+    this.timeLimitSeconds = timeLimitSeconds;
+    this.rands = new Random[Math.max(1, threads)];
+    for (int i = 0; i < this.rands.length; i++) this.rands[i] = new Random(i);
+  }
+
+  /**
+   * 内部の状態を新しいゲーム用に戻す。
+   */
+  public void setBoard(Board board) {
+    this.usedNanos = 0;
+    this.deadline = Long.MAX_VALUE;
+    this.gamePlayouts = 0;
+  }
+
+  /**
+   * 対局の時計による締め切りを設定する（MyPlayer.setDeadline と同じ）。
+   */
+  public void setDeadline(long deadline) {
+    this.deadline = deadline;
+  }
+
+  /**
+   * UCB1 の探索項の係数を設定する。
+   */
+  public void setExploration(float exploration) {
+    this.exploration = exploration;
+  }
+
+  /**
+   * 複数スレッドのときに、スレッドごとに別の木を作るかどうかを設定する。
+   */
+  public void setRootParallel(boolean rootParallel) {
+    this.rootParallel = rootParallel;
+  }
+
+  /**
+   * 時間制御なしのときの1手のプレイアウト数を設定する。
+   */
+  public void setPlayoutLimit(int playouts) {
+    this.playoutLimit = playouts;
+  }
+
+  /**
+   * プレイアウトの乱数の種を設定する。各スレッドには種に番号を足した値を設定する。
+   */
+  public void setSeed(long seed) {
+    for (int i = 0; i < this.rands.length; i++) this.rands[i].setSeed(seed + i);
+  }
+
+  /**
+   * 直近の think の1秒あたりのプレイアウト数
+   */
+  public double playoutsPerSecond() {
+    return this.playouts * 1e9 / Math.max(1, this.nanos);
+  }
+
+  /**
+   * AIの思考ルーチン。次の一手を決定する。
+   * 打てる手が1つ以下なら探索せずに返す。
+   */
+  public Move think(Board board) {
+    long t0 = System.nanoTime();
+    var root = BitBoard.of(board);
+    var color = getColor();
+    long legal = root.legalMask(color);
+
+    Move move;
+    this.playouts = 0;
+    if (Long.bitCount(legal) <= 1) {
+      move = legal == 0 ? Move.ofPass(color) : BitBoard.moveOf(Long.numberOfTrailingZeros(legal), color);
+    } else {
+      boolean timed = this.timeLimitSeconds > 0;
+      long deadline = timed ? t0 + MyPlayer.allocate(remainingNanos(), root.count(NONE)) : Long.MAX_VALUE;
+      move = search(root, color, deadline, timed ? Long.MAX_VALUE : this.playoutLimit);
+    }
+
+    this.nanos = System.nanoTime() - t0;
+    this.usedNanos += this.nanos;
+    this.gamePlayouts += this.playouts;
+    return move;
+  }
+
+  /**
+   * 木を作ってプレイアウトを繰り返し、ルートで訪問回数が最大の手を返す。
+   * @param board 盤面
+   * @param color 手番の色
+   * @param deadline 打ち切る時刻（System.nanoTime() の値）
+   * @param limit プレイアウト数の上限（全スレッドの合計）
+   */
+  Move search(BitBoard board, Color color, long deadline, long limit) {
+    int threads = this.rands.length;
+    var trees = new Node[this.rootParallel ? threads : 1];
+    for (int i = 0; i < trees.length; i++) {
+      trees[i] = new Node(TranspositionTable.NO_MOVE, color.flipped());
+      trees[i].expand(board, color, this.eval);
+    }
+    // 展開で付けたパターンの番号は外し、各スレッドのプレイアウトで差分更新しないようにする
+    board.patterns = null;
+    var count = new AtomicLong();
+    this.stop.set(false);
+
+    var futures = new ArrayList<Future<?>>();
+    var workers = threads > 1 ? workers() : null;
+    for (int i = 1; i < threads && workers != null; i++) {
+      var worker = new Worker(trees[i % trees.length], board.clone(), this.rands[i]);
+      try {
+        futures.add(workers.submit(() -> worker.run(deadline, limit, count)));
+      } catch (RejectedExecutionException e) {
+        // 探索中に別のスレッドから閉じられた
+        break;
+      }
+    }
+    new Worker(trees[0], board.clone(), this.rands[0]).run(deadline, limit, count);
+    join(futures);
+    this.playouts = count.get();
+
+    // root 並列では各木のルートの子の訪問回数を手ごとに合計する
+    var visits = new long[LENGTH + 1];
+    var wins = new double[LENGTH + 1];
+    for (var tree : trees) {
+      for (var child : tree.children) {
+        int k = child.move == Move.PASS ? LENGTH : child.move;
+        visits[k] += child.visits;
+        wins[k] += child.wins;
+      }
+    }
+    int best = 0;
+    for (int k = 1; k <= LENGTH; k++)
+      if (visits[k] > visits[best]) best = k;
+    this.winRate = (float) (wins[best] / Math.max(1, visits[best]));
+    return BitBoard.moveOf(best == LENGTH ? Move.PASS : best, color);
+  }
+
+  /**
+   * 補助スレッドの Executor を取得する（最初に呼ばれたときに作る）。
+   * @return Executor（閉じた後はnull）
+   */
+  synchronized ExecutorService workers() {
+    if (this.closed) return null;
+    if (this.workers == null) {
+      this.workers = Executors.newFixedThreadPool(this.rands.length - 1, r -> {
+        var thread = new Thread(r, toString() + "-worker");
+        thread.setDaemon(true);
+        return thread;
+      });
+    }
+    return this.workers;
+  }
+
+  /**
+   * 補助スレッドを止める。閉じた後の think は呼んだスレッドだけで探索する。
+   * 時間切れで打ち切られた think が戻る前に別のスレッドから呼んでもよい（実行中の補助スレッドは最後まで反復する）。
+   */
+  public synchronized void close() {
+    this.closed = true;
+    if (this.workers != null) this.workers.shutdown();
+  }
+
+  /**
+   * 補助スレッドの終了を待つ。
+   * 補助スレッドは木を共有するので、待っている間に割り込まれても最後まで待ち、
+   * 割り込まれたことは戻る前に割り込みフラグに戻す（MyPlayer.joinHelpers と同じ）。
+   */
+  static void join(List<Future<?>> futures) {
+    boolean interrupted = false;
+    try {
+      for (var future : futures) {
+        while (true) {
+          try {
+            future.get();
+            break;
+          } catch (InterruptedException e) {
+            interrupted = true;
+          } catch (ExecutionException e) {
+            throw new IllegalStateException("playout worker failed", e.getCause());
+          }
+        }
+      }
+    } finally {
+      if (interrupted) Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * このゲームの残り時間（ナノ秒）を取得する。余裕分の時間は除く。
+   */
+  long remainingNanos() {
+    long remaining = (long) (this.timeLimitSeconds * 1e9) - this.usedNanos;
+    if (this.deadline != Long.MAX_VALUE) remaining = Math.min(remaining, this.deadline - System.nanoTime());
+    return Math.max(0, remaining - MyPlayer.TIME_MARGIN_NANOS);
+  }
+
+  /**
+   * 木のノード。親の局面で move を打った後の局面を表す。
+   * 勝ち数は move を打った側（color）から見た値で、引き分けは 0.5 勝と数える。
+   * 木を共有する場合、visits と wins の更新と展開はノード自身をロックして行う。
+   * 親の select は子をロックせずに読むので、他のスレッドの更新が少し遅れて見えることがある。
+   */
+  static class Node {
+    /** このノードに至る手の位置（パスは Move.PASS） */
+    final int move;
+    /** move を打った色 */
+    final Color color;
+    /** 事前確率 */
+    float prior;
+    /** 訪問回数（探索中の経路のバーチャルロスを含む） */
+    int visits;
+    /** 勝ち数 */
+    float wins;
+    /** 子ノード（展開していなければnull） */
+    Node[] children;
+
+    Node(int move, Color color) {
+      this.move = move;
+      this.color = color;
+    }
+
+    /**
+     * 子ノードを作る。
+     * 評価関数があれば、子の局面を評価して手番側から見た値の softmax を事前確率にする。
+     * 評価の前に prepare するので、子の局面の評価は play/undo の差分更新で済む
+     * （盤面に番号の配列が付いていればそれを使い直し、ヒープを確保しない）。
+     * @param board このノードの局面（終了時には元に戻っている。評価関数があれば番号の配列が付いたままになる）
+     * @param turn 手番の色
+     * @param eval 事前確率に使う評価関数（null なら一様）
+     */
+    void expand(BitBoard board, Color turn, MyEval eval) {
+      long legal = board.legalMask(turn);
+      int n = Math.max(1, Long.bitCount(legal));
+      var nodes = new Node[n];
+      if (legal == 0) {
+        nodes[0] = new Node(Move.PASS, turn);
+      } else {
+        int i = 0;
+        for (long m = legal; m != 0; m &= m - 1)
+          nodes[i++] = new Node(Long.numberOfTrailingZeros(m), turn);
+      }
+
+      if (eval != null && n > 1) {
+        eval.prepare(board);
+        float max = Float.NEGATIVE_INFINITY;
+        for (var child : nodes) {
+          board.play(child.move, turn);
+          float v = eval.value(board);
+          board.undo();
+          child.prior = turn == BLACK ? v : -v;
+          max = Math.max(max, child.prior);
+        }
+        float sum = 0;
+        for (var child : nodes) sum += child.prior = (float) Math.exp((child.prior - max) / PRIOR_TEMPERATURE);
+        for (var child : nodes) child.prior /= sum;
+      } else {
+        for (var child : nodes) child.prior = 1.0f / n;
+      }
+      this.children = nodes;
+    }
+
+    /**
+     * UCB1 の値と事前確率の補正が最大の子を選ぶ。
+     * まだ訪問していない子があれば、その中で事前確率が最大のものを選ぶ。
+     */
+    Node select(float exploration) {
+      Node best = null, fresh = null;
+      float bestValue = Float.NEGATIVE_INFINITY;
+      double logVisits = Math.log(Math.max(1, this.visits));
+      for (var child : this.children) {
+        if (child.visits == 0) {
+          if (fresh == null || child.prior > fresh.prior) fresh = child;
+          continue;
+        }
+        float value = child.wins / child.visits
+            + exploration * (float) Math.sqrt(logVisits / child.visits)
+            + PRIOR_WEIGHT * child.prior / (child.visits + 1);
+        if (value > bestValue) {
+          bestValue = value;
+          best = child;
+        }
+      }
+      return fresh != null ? fresh : best;
+    }
+  }
+
+  /**
+   * 1つのスレッドの探索。盤面と経路のバッファを持ち、反復ごとにヒープを確保しない（展開を除く）。
+   */
+  class Worker {
+    /** 探索する木のルート */
+    final Node root;
+    /** ルートの局面（反復の終わりには元に戻っている） */
+    final BitBoard board;
+    /** プレイアウトの乱数 */
+    final Random rand;
+    /** ルートからたどったノード */
+    final Node[] path = new Node[MAX_PLY + 1];
+    /** 展開のときだけ盤面に付けるパターンの番号の配列（最初の展開で作り、以後は使い直す） */
+    int[] patterns;
+
+    Worker(Node root, BitBoard board, Random rand) {
+      this.root = root;
+      this.board = board;
+      this.rand = rand;
+    }
+
+    /**
+     * 打ち切り時刻かプレイアウト数の上限まで反復する。
+     * スレッドに割り込まれたら停止フラグを立て、他のスレッドの反復も止める。
+     * @param count 全スレッドのプレイアウト数
+     */
+    void run(long deadline, long limit, AtomicLong count) {
+      var stop = MyMctsPlayer.this.stop;
+      while (count.getAndIncrement() < limit && System.nanoTime() < deadline && stop.get() == false) {
+        iterate();
+        if (Thread.currentThread().isInterrupted()) stop.set(true);
+      }
+      // 上限を超えて数えた分を戻す
+      count.decrementAndGet();
+    }
+
+    /**
+     * 選択・展開・プレイアウト・逆伝播を1回行う。
+     */
+    void iterate() {
+      int depth = 0;
+      var node = this.root;
+      this.path[depth++] = node;
+      synchronized (node) {
+        node.visits += VIRTUAL_LOSS;
+      }
+      while (true) {
+        Node next;
+        synchronized (node) {
+          if (node.children == null) {
+            if (node.visits - VIRTUAL_LOSS < EXPAND_VISITS || this.board.isEnd()) break;
+            // プレイアウトで番号を差分更新しないよう、番号の配列は展開の間だけ盤面に付ける
+            this.board.patterns = this.patterns;
+            node.expand(this.board, node.color.flipped(), MyMctsPlayer.this.eval);
+            this.patterns = this.board.patterns;
+            this.board.patterns = null;
+          }
+          next = node.select(MyMctsPlayer.this.exploration);
+        }
+        synchronized (next) {
+          next.visits += VIRTUAL_LOSS;
+        }
+        this.board.play(next.move, next.color);
+        node = next;
+        this.path[depth++] = node;
+      }
+
+      // 黒から見た結果（勝ち1、引き分け0.5、負け0）
+      float result = playout();
+      for (int i = depth - 1; i >= 0; i--) {
+        var n = this.path[i];
+        synchronized (n) {
+          n.visits += 1 - VIRTUAL_LOSS;
+          n.wins += n.color == BLACK ? result : 1 - result;
+        }
+        if (i > 0) this.board.undo();
+      }
+    }
+
+    /**
+     * 現在の局面から、合法手を一様に選んで終局まで打ち、盤面を元に戻す。
+     * @return 黒から見た結果（勝ち1、引き分け0.5、負け0）
+     */
+    float playout() {
+      int plies = 0;
+      var turn = this.board.getTurn();
+      while (true) {
+        long legal = this.board.legalMask(turn);
+        if (legal == 0) {
+          if (this.board.legalMask(turn.flipped()) == 0) break;
+          this.board.play(Move.PASS, turn);
+        } else {
+          for (int r = this.rand.nextInt(Long.bitCount(legal)); r > 0; r--) legal &= legal - 1;
+          this.board.play(Long.numberOfTrailingZeros(legal), turn);
+        }
+        plies++;
+        turn = turn.flipped();
+      }
+      int score = this.board.score();
+      for (int i = 0; i < plies; i++) this.board.undo();
+      return score > 0 ? 1 : score < 0 ? 0 : 0.5f;
+    }
+  }
+
+  /**
+   * MyMctsPlayer と MyPlayer を同じ持ち時間で対戦させ、勝敗とプレイアウト数を表示する
+   * 引数：対戦数（デフォルト 10）、1ゲームの持ち時間（秒、デフォルト 10）、スレッド数（デフォルト 1）、
+   *       並列の方法 tree|root（デフォルト tree）、事前確率 prior|uniform（デフォルト prior）
+   */
+  public static void main(String args[]) {
+    int games = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+    float seconds = args.length > 1 ? Float.parseFloat(args[1]) : 10;
+    int threads = args.length > 2 ? Integer.parseInt(args[2]) : 1;
+    boolean root = args.length > 3 && args[3].equals("root");
+    boolean prior = args.length <= 4 || args[4].equals("prior");
+
+    var mcts = new ArrayList<MyMctsPlayer>();
+    MyTournament.PlayerFactory first = (color, seed) -> {
+      var player = new MyMctsPlayer(MY_NAME, color, prior ? MyPatternEval.loadDefault() : null, seconds, threads);
+      player.setRootParallel(root);
+      player.setSeed(seed);
+      synchronized (mcts) {
+        mcts.add(player);
+      }
+      return player;
+    };
+    MyTournament.PlayerFactory second = (color, seed) -> new MyPlayer(MyPlayer.MY_NAME, color,
+        MyPatternEval.loadDefault(), MyPlayer.MAX_DEPTH, MyPlayer.DEFAULT_TABLE_MEGABYTES, seconds, threads);
+
+    var result = new MyTournament(new BitBoard(), first, second, games, 0).runSequential();
+    result.print();
+    long playouts = 0, nanos = 0;
+    for (var player : mcts) {
+      playouts += player.gamePlayouts;
+      nanos += player.usedNanos;
+    }
+    System.out.printf("playouts %d  %.0f playouts/s\n", playouts, playouts * 1e9 / Math.max(1, nanos));
+  }
+}
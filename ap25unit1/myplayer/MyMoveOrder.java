@@ -0,0 +1,193 @@
+package myplayer;
+
+import static ap25.Board.*;
+import static ap25.Color.*;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import ap25.*;
+
+/**
+ * 中盤の探索で手を調べる順序を決めるクラス。MySearch ごとに1つ持つ。
+ * 置換表の最善手、その深さでカットを起こしたキラー手、これまでにカットを起こした回数（ヒストリー）、
+ * 残りの深さが大きいノードでは着手後の相手の合法手数（モビリティ）を使って手を並べる。
+ * 反復深化の深さごとに、展開したノード数とカットの回数を数える（MySearchStats.ENABLED のときだけ）。
+ */
+class MyMoveOrder {
+  /** 深さごとに覚えるキラー手の数 */
+  static final int KILLERS = 2;
+  /** 残りの深さがこの値以上のノードでは、着手後の相手の合法手数で手を並べる */
+  static final int MOBILITY_DEPTH = 3;
+  /** ヒストリーの値の上限（超えたら全体を半分にする） */
+  static final int HISTORY_MAX = 1 << 16;
+  /** 補助スレッドで並び順をばらつかせるために足す乱数の範囲 */
+  static final int NOISE = 1 << 8;
+
+  /** 深さごとのキラー手（なければ TranspositionTable.NO_MOVE） */
+  int[][] killers;
+  /** 色と位置ごとのヒストリー（カットを起こした手に残りの深さの2乗を足す） */
+  int[][] history = new int[2][LENGTH];
+  /** 深さごとの並び替え用のキーのバッファ */
+  int[][] keyBuffers;
+  /** false のときは従来どおりランダムに並べ、置換表の手だけを先頭にする（比較用） */
+  boolean heuristics = true;
+  /** true のときは同じ優先度の手の順序を乱数でばらつかせる（Lazy SMP の補助スレッド用） */
+  boolean randomize;
+  /** 並び替えに使う乱数生成器 */
+  Random rand = new Random();
+
+  /** 反復深化の深さごとの、手を展開したノードの数 */
+  long[] expanded;
+  /** 反復深化の深さごとの、カット（β カット）を起こしたノードの数 */
+  long[] cutoffs;
+  /** 反復深化の深さごとの、最初の手でカットを起こしたノードの数 */
+  long[] firstCutoffs;
+  /** 反復深化の深さごとの、探索したノードの数 */
+  long[] nodes;
+
+  /**
+   * コンストラクタ
+   * @param depthLimit 探索の深さ制限
+   */
+  MyMoveOrder(int depthLimit) {
+    this.killers = new int[depthLimit + 1][KILLERS];
+    this.keyBuffers = new int[depthLimit + 1][LENGTH];
+    this.expanded = new long[depthLimit + 1];
+    this.cutoffs = new long[depthLimit + 1];
+    this.firstCutoffs = new long[depthLimit + 1];
+    this.nodes = new long[depthLimit + 1];
+    clearKillers();
+  }
+
+  /**
+   * 新しい局面の探索を始める前に呼ぶ。
+   * キラー手と統計を消し、ヒストリーは前の手の情報を少し残すために半分にする。
+   */
+  void newSearch() {
+    clearKillers();
+    Arrays.fill(this.expanded, 0);
+    Arrays.fill(this.cutoffs, 0);
+    Arrays.fill(this.firstCutoffs, 0);
+    Arrays.fill(this.nodes, 0);
+    for (var h : this.history)
+      for (int k = 0; k < LENGTH; k++) h[k] >>= 1;
+  }
+
+  /**
+   * キラー手をすべて消す。
+   */
+  void clearKillers() {
+    for (var k : this.killers)
+      Arrays.fill(k, TranspositionTable.NO_MOVE);
+  }
+
+  /**
+   * 合法手を調べる順に並べ替える。配列をその場で並べ替え、ヒープは確保しない。
+   * 置換表の手、キラー手（新しい順）を先頭にし、残りは
+   * 残りの深さが MOBILITY_DEPTH 以上なら着手後の相手の合法手が少ない順（同数ならヒストリーの大きい順）、
+   * それ以外はヒストリーの大きい順に並べる。
+   * @param board 盤面
+   * @param color 手番の色
+   * @param moves 合法手（パスのみの場合は並べ替えない）
+   * @param n 手の数
+   * @param hint 置換表の最善手（なければ TranspositionTable.NO_MOVE）
+   * @param depth ルートからの深さ
+   * @param remaining 残りの深さ
+   */
+  void order(BitBoard board, Color color, int[] moves, int n, int hint, int depth, int remaining) {
+    if (n <= 1) return;
+    if (this.heuristics == false) {
+      shuffle(moves, n);
+      MySearch.first(moves, n, hint);
+      return;
+    }
+
+    long own = color == BLACK ? board.black : board.white;
+    long opp = color == BLACK ? board.white : board.black;
+    long empty = BitBoard.FULL & ~(board.black | board.white | board.block);
+    boolean mobility = remaining >= MOBILITY_DEPTH;
+    var history = this.history[color == BLACK ? 0 : 1];
+    var killers = this.killers[depth];
+    var keys = this.keyBuffers[depth];
+
+    for (int count = 0; count < n; count++) {
+      int k = moves[count];
+      int key;
+      if (k == hint) {
+        key = Integer.MIN_VALUE;
+      } else if (k == killers[0]) {
+        key = Integer.MIN_VALUE + 1;
+      } else if (k == killers[1]) {
+        key = Integer.MIN_VALUE + 2;
+      } else {
+        key = -history[k];
+        if (mobility) {
+          long bit = 1L << k;
+          long f = BitBoard.flips(k, own, opp);
+          key += Long.bitCount(BitBoard.legalMask(opp & ~f, own | f | bit, empty & ~bit)) * HISTORY_MAX;
+        }
+        if (this.randomize) key += this.rand.nextInt(NOISE);
+      }
+
+      // 挿入ソート
+      int i = count;
+      while (i > 0 && keys[i - 1] > key) {
+        keys[i] = keys[i - 1];
+        moves[i] = moves[i - 1];
+        i--;
+      }
+      keys[i] = key;
+      moves[i] = k;
+    }
+  }
+
+  /**
+   * 手の順序をランダムに並び替える。
+   */
+  void shuffle(int[] moves, int n) {
+    for (int i = n - 1; i > 0; i--) {
+      int j = this.rand.nextInt(i + 1);
+      int t = moves[i];
+      moves[i] = moves[j];
+      moves[j] = t;
+    }
+  }
+
+  /**
+   * 手を展開したノードの数を数える。
+   * @param searchDepth 反復深化で探索中の深さ
+   */
+  void expand(int searchDepth) {
+    if (MySearchStats.ENABLED) this.expanded[searchDepth]++;
+  }
+
+  /**
+   * カットを起こした手を記録する。
+   * キラー手に加え、ヒストリーに残りの深さの2乗を足す。
+   * @param color 手番の色
+   * @param k カットを起こした手の位置
+   * @param index その手を調べた順番（0 が最初）
+   * @param depth ルートからの深さ
+   * @param remaining 残りの深さ
+   * @param searchDepth 反復深化で探索中の深さ
+   */
+  void cutoff(Color color, int k, int index, int depth, int remaining, int searchDepth) {
+    if (MySearchStats.ENABLED) {
+      this.cutoffs[searchDepth]++;
+      if (index == 0) this.firstCutoffs[searchDepth]++;
+    }
+    if (k == Move.PASS) return;
+
+    var killers = this.killers[depth];
+    if (killers[0] != k) {
+      killers[1] = killers[0];
+      killers[0] = k;
+    }
+
+    var history = this.history[color == BLACK ? 0 : 1];
+    history[k] += remaining * remaining;
+    if (history[k] >= HISTORY_MAX)
+      for (int i = 0; i < LENGTH; i++) history[i] >>= 1;
+  }
+}
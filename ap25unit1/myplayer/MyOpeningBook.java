@@ -0,0 +1,338 @@
+package myplayer;
+
+import static ap25.Board.*;
+import static ap25.Color.*;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import ap25.*;
+
+/**
+ * 序盤の定石（オープニングブック）
+ * 局面を手番側の石と相手の石に分け（黒白の入れ替えで同じになる局面をまとめる）、
+ * 盤面の8通りの回転・反転のうちマスクが最小になる向きを標準形とする。
+ * 標準形のハッシュ値をキーとして、標準形の向きでの最善手を記録し、
+ * キーの昇順に並べた配列を二分探索して引く。
+ * 定石は棋譜ファイルの集計、または指定した手数までの全局面の探索から作る。
+ *
+ * ファイルの形式（数値はビッグエンディアン）：
+ *   int 識別子 "MYOB"、short 版、int 局面数、
+ *   続いて局面ごとに long キー、byte 最善手（標準形の向き）、short 評価値（手番側から見た値）
+ *
+ * 引数：
+ *   -records ファイル...  棋譜ファイルから作る（複数指定可）
+ *   -search 深さ  指定手数までの全局面を MyPlayer で探索して作る
+ *   -plies n  定石に入れる手数（デフォルト 8）
+ *   -min n  棋譜から作るとき、手を採用するのに必要な対局数（デフォルト 3）
+ *   -out ファイル  書き出すファイル（デフォルト book.bin）
+ */
+public class MyOpeningBook {
+  /** ファイルの先頭の識別子（"MYOB"） */
+  static final int MAGIC = 0x4D594F42;
+  /** ファイルの形式の版 */
+  static final short VERSION = 1;
+  /** 起動時に読み込む定石ファイルを指定するシステムプロパティ */
+  static final String BOOK_PROPERTY = "myplayer.book";
+  /** 起動時に読み込む定石ファイルのデフォルトのパス */
+  static final String DEFAULT_BOOK_FILE = "book.bin";
+
+  /** 対称変換ごとの、各マスの移動先（[変換][位置]） */
+  static final int[][] SYMMETRY = new int[8][LENGTH];
+  /** 対称変換ごとの、各マスの移動元（SYMMETRY の逆変換） */
+  static final int[][] INVERSE = new int[8][LENGTH];
+
+  static {
+    for (int s = 0; s < 8; s++) {
+      for (int k = 0; k < LENGTH; k++) {
+        int t = MyPatternEval.transform(k % SIZE, k / SIZE, s);
+        SYMMETRY[s][k] = t;
+        INVERSE[s][t] = k;
+      }
+    }
+  }
+
+  /** 起動時に読み込んだ定石（最初に必要になったときに読み込み、全プレイヤーで共有する） */
+  static MyOpeningBook defaultBook;
+
+  /** キー（昇順） */
+  long[] keys;
+  /** キーごとの標準形の向きでの最善手 */
+  byte[] moves;
+  /** キーごとの手番側から見た評価値 */
+  short[] values;
+
+  /**
+   * 空の定石を作成する
+   */
+  MyOpeningBook() {
+    this(new long[0], new byte[0], new short[0]);
+  }
+
+  /**
+   * キーの昇順に並んだ配列から作成する
+   */
+  MyOpeningBook(long[] keys, byte[] moves, short[] values) {
+    this.keys = keys;
+    this.moves = moves;
+    this.values = values;
+  }
+
+  /** 局面数 */
+  public int size() { return this.keys.length; }
+
+  /**
+   * 局面の標準形を求める
+   * @param board 局面
+   * @return {手番側の石, 相手の石, 障害物, 標準形にする対称変換の番号}
+   */
+  static long[] canonical(BitBoard board) {
+    var turn = board.getTurn();
+    long own = turn == BLACK ? board.black : board.white;
+    long opp = turn == BLACK ? board.white : board.black;
+    long[] best = null;
+    for (int s = 0; s < 8; s++) {
+      long o = transform(own, s), p = transform(opp, s), b = transform(board.block, s);
+      if (best == null || less(o, p, b, best)) best = new long[] { o, p, b, s };
+    }
+    return best;
+  }
+
+  /**
+   * (own, opp, block) が best の前3要素より辞書順で小さいかどうか
+   */
+  static boolean less(long own, long opp, long block, long[] best) {
+    if (own != best[0]) return own < best[0];
+    if (opp != best[1]) return opp < best[1];
+    return block < best[2];
+  }
+
+  /**
+   * マスクに対称変換を適用する
+   */
+  static long transform(long mask, int s) {
+    long t = 0;
+    for (long m = mask; m != 0; m &= m - 1)
+      t |= 1L << SYMMETRY[s][Long.numberOfTrailingZeros(m)];
+    return t;
+  }
+
+  /**
+   * 標準形からキーを計算する（3つのマスクを混ぜ合わせた64ビットのハッシュ値）
+   */
+  static long key(long[] canonical) {
+    return mix(mix(mix(canonical[0]) ^ canonical[1]) ^ canonical[2]);
+  }
+
+  /**
+   * 64ビット値をよく混ぜる（SplitMix64 の仕上げの処理）
+   */
+  static long mix(long z) {
+    z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+    z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+    return z ^ (z >>> 31);
+  }
+
+  /**
+   * 局面の最善手を定石から引く
+   * @param board 局面（手番は board.getTurn()）
+   * @return 最善手の位置（定石にない、または合法手でない場合は -1）
+   */
+  public int lookup(BitBoard board) {
+    if (this.keys.length == 0) return -1;
+    var c = canonical(board);
+    int i = Arrays.binarySearch(this.keys, key(c));
+    if (i < 0) return -1;
+    int k = INVERSE[(int) c[3]][this.moves[i]];
+    // キーのハッシュ値の衝突に備えて合法手かどうかを確かめる
+    return (board.legalMask(board.getTurn()) & 1L << k) != 0 ? k : -1;
+  }
+
+  /**
+   * プレイヤーが標準で使う定石を取得する
+   * システムプロパティ myplayer.book（なければ book.bin）のファイルがあれば読み込み、なければ空の定石を使う。
+   * @throws UncheckedIOException ファイルがあるが読み込めない場合
+   */
+  static synchronized MyOpeningBook loadDefault() {
+    if (defaultBook == null) {
+      var path = Path.of(System.getProperty(BOOK_PROPERTY, DEFAULT_BOOK_FILE));
+      try {
+        defaultBook = Files.exists(path) ? load(path) : new MyOpeningBook();
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+    return defaultBook;
+  }
+
+  /**
+   * 定石ファイルを読み込む
+   * @throws IOException 読み込めない場合、または定石ファイルでない場合
+   */
+  static MyOpeningBook load(Path path) throws IOException {
+    try (var in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+      if (in.readInt() != MAGIC || in.readShort() != VERSION)
+        throw new IOException("not an opening book: " + path);
+      int n = in.readInt();
+      var keys = new long[n];
+      var moves = new byte[n];
+      var values = new short[n];
+      for (int i = 0; i < n; i++) {
+        keys[i] = in.readLong();
+        moves[i] = in.readByte();
+        values[i] = in.readShort();
+        if (i > 0 && keys[i - 1] >= keys[i])
+          throw new IOException("opening book is not sorted: " + path);
+      }
+      return new MyOpeningBook(keys, moves, values);
+    }
+  }
+
+  /**
+   * 定石を load で読める形式で保存する
+   */
+  void save(Path path) throws IOException {
+    try (var out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path)))) {
+      out.writeInt(MAGIC);
+      out.writeShort(VERSION);
+      out.writeInt(this.keys.length);
+      for (int i = 0; i < this.keys.length; i++) {
+        out.writeLong(this.keys[i]);
+        out.writeByte(this.moves[i]);
+        out.writeShort(this.values[i]);
+      }
+    }
+  }
+
+  /**
+   * キーから {最善手, 評価値} への対応からキーの昇順の定石を作る
+   */
+  static MyOpeningBook of(Map<Long, int[]> entries) {
+    var keys = entries.keySet().stream().mapToLong(x -> x).sorted().toArray();
+    var moves = new byte[keys.length];
+    var values = new short[keys.length];
+    for (int i = 0; i < keys.length; i++) {
+      var e = entries.get(keys[i]);
+      moves[i] = (byte) e[0];
+      values[i] = (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, e[1]));
+    }
+    return new MyOpeningBook(keys, moves, values);
+  }
+
+  /**
+   * 棋譜ファイルから定石を作る
+   * 開始から plies 手までの各局面で、打たれた手ごとに対局数と手番側から見た最終スコアの合計を集計し、
+   * min 局以上打たれた手のうち平均スコアが最大の手を採用する
+   */
+  static MyOpeningBook fromRecords(List<Path> paths, int plies, int min) throws IOException {
+    // キー → [標準形の向きの手ごとの {対局数, スコアの合計}]
+    var stats = new HashMap<Long, long[][]>();
+    for (var path : paths) {
+      try (var reader = new MyGameRecordReader(path)) {
+        while (reader.next()) {
+          if (reader.end() != MyGameRecordWriter.END_NORMAL) continue;
+          var board = reader.initialBoard();
+          int n = Math.min(plies, reader.moveCount());
+          for (int i = 0; i < n; i++) {
+            int k = reader.move(i);
+            if (MyGameRecordWriter.isFoul(k)) break;
+            var turn = board.getTurn();
+            if (k >= 0) {
+              var c = canonical(board);
+              var s = stats.computeIfAbsent(key(c), x -> new long[LENGTH][2]);
+              var move = s[SYMMETRY[(int) c[3]][k]];
+              move[0]++;
+              move[1] += turn == BLACK ? reader.score() : -reader.score();
+            }
+            board = board.placed(BitBoard.moveOf(k, turn));
+          }
+        }
+      }
+    }
+
+    var entries = new HashMap<Long, int[]>();
+    for (var e : stats.entrySet()) {
+      int best = -1;
+      double bestMean = 0;
+      for (int k = 0; k < LENGTH; k++) {
+        var s = e.getValue()[k];
+        if (s[0] < min) continue;
+        double mean = (double) s[1] / s[0];
+        if (best < 0 || mean > bestMean) {
+          best = k;
+          bestMean = mean;
+        }
+      }
+      if (best >= 0) entries.put(e.getKey(), new int[] { best, (int) Math.round(bestMean) });
+    }
+    return of(entries);
+  }
+
+  /**
+   * 初期配置から plies 手未満で現れるすべての局面を、指定した深さの MyPlayer で探索して定石を作る
+   * 黒白の入れ替えと対称変換で同じになる局面は1回だけ探索する
+   */
+  static MyOpeningBook fromSearch(BitBoard start, int plies, int depth) {
+    var player = new MyPlayer(MyPlayer.MY_NAME, BLACK, MyPatternEval.loadDefault(), depth);
+    player.setEndgameEmpties(0);
+    var entries = new HashMap<Long, int[]>();
+    var seen = new HashSet<Long>();
+    var frontier = List.of(start);
+    var buf = new int[LENGTH];
+    for (int ply = 0; ply < plies; ply++) {
+      var next = new ArrayList<BitBoard>();
+      for (var board : frontier) {
+        if (board.isEnd()) continue;
+        var c = canonical(board);
+        if (seen.add(key(c)) == false) continue;
+
+        var turn = board.getTurn();
+        int n = board.findLegalIndexes(turn, buf);
+        if (buf[0] != Move.PASS) {
+          var move = player.search(board.clone(), turn, System.nanoTime());
+          entries.put(key(c), new int[] { SYMMETRY[(int) c[3]][move.getIndex()], Math.round(player.score) });
+        }
+        for (int i = 0; i < n; i++) next.add(board.placed(BitBoard.moveOf(buf[i], turn)));
+      }
+      frontier = next;
+      System.out.printf("ply %d: %d positions\n", ply, entries.size());
+    }
+    return of(entries);
+  }
+
+  public static void main(String args[]) throws IOException {
+    var records = new ArrayList<Path>();
+    int depth = 0, plies = 8, min = 3;
+    var out = Path.of(DEFAULT_BOOK_FILE);
+    for (int i = 0; i < args.length; i++) {
+      switch (args[i]) {
+      case "-records":
+        while (i + 1 < args.length && args[i + 1].startsWith("-") == false)
+          records.add(Path.of(args[++i]));
+        break;
+      case "-search": depth = Integer.parseInt(args[++i]); break;
+      case "-plies": plies = Integer.parseInt(args[++i]); break;
+      case "-min": min = Integer.parseInt(args[++i]); break;
+      case "-out": out = Path.of(args[++i]); break;
+      default: throw new IllegalArgumentException("unknown option: " + args[i]);
+      }
+    }
+
+    long t0 = System.nanoTime();
+    var book = depth > 0 ? fromSearch(new BitBoard(), plies, depth) : fromRecords(records, plies, min);
+    book.save(out);
+    System.out.printf("%d positions in %.1fs -> %s\n", book.size(), (System.nanoTime() - t0) / 1e9, out);
+  }
+}
@@ -0,0 +1,80 @@
+package myplayer;
+
+import static ap25.Color.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * 手の並び替えと探索窓の効果を測るプログラム
+ * ランダムに作った中盤の局面を、次の3通りで同じ深さまで反復深化で探索し、
+ * 深さごとのノード数とカットの割合を表示する。
+ *   random   ランダムな並び（置換表の手だけ先頭）で、常に全幅の窓
+ *   ordered  MyMoveOrder の並びで、常に全幅の窓
+ *   pvs      MyMoveOrder の並びで、幅0の窓とアスピレーションウィンドウを使う（MyPlayer の標準）
+ * cut はカットを起こしたノードの割合、first はカットのうち最初の手で起きたものの割合。
+ * 引数：探索の深さ、局面数、乱数の種
+ */
+public class MyOrderStats {
+  /** 比較する探索の設定の名前 */
+  static final String[] MODES = { "random", "ordered", "pvs" };
+
+  public static void main(String args[]) {
+    var depth = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+    var count = args.length > 1 ? Integer.parseInt(args[1]) : 16;
+    var rand = new Random(args.length > 2 ? Long.parseLong(args[2]) : 0);
+
+    var positions = new ArrayList<BitBoard>();
+    for (int i = 0; i < count; i++)
+      positions.add(MyEndgameSolver.randomPosition(rand, 24));
+
+    // JIT コンパイルを済ませるための予備の探索
+    run(positions, Math.max(1, depth - 2), MODES.length - 1);
+
+    System.out.printf("depth %d, %d positions\n", depth, count);
+    var stats = new MyMoveOrder[MODES.length];
+    for (int m = 0; m < MODES.length; m++) stats[m] = run(positions, depth, m);
+
+    var header = new StringBuilder("depth");
+    for (var mode : MODES) header.append(String.format("  %12s nodes   cut  first", mode));
+    System.out.println(header);
+    for (int d = 1; d <= depth; d++) {
+      var line = new StringBuilder(String.format("%5d", d));
+      for (var s : stats)
+        line.append(String.format("  %18d %5.1f%% %5.1f%%", s.nodes[d],
+            percent(s.cutoffs[d], s.expanded[d]), percent(s.firstCutoffs[d], s.cutoffs[d])));
+      System.out.println(line);
+    }
+  }
+
+  /**
+   * 各局面を1スレッドで探索し、主スレッドの統計を合計して返す
+   * @param mode MODES の番号
+   */
+  static MyMoveOrder run(List<BitBoard> positions, int depth, int mode) {
+    var total = new MyMoveOrder(depth);
+    long t0 = System.nanoTime();
+    for (var position : positions) {
+      var player = new MyPlayer(MyPlayer.MY_NAME, BLACK, depth);
+      player.setEndgameEmpties(0);
+      player.setSeed(0);
+      var searcher = player.searchers[0];
+      searcher.ordering.heuristics = mode > 0;
+      searcher.pvs = mode > 1;
+      player.search(position.clone(), position.getTurn(), System.nanoTime());
+      for (int d = 0; d <= depth; d++) {
+        total.nodes[d] += searcher.ordering.nodes[d];
+        total.expanded[d] += searcher.ordering.expanded[d];
+        total.cutoffs[d] += searcher.ordering.cutoffs[d];
+        total.firstCutoffs[d] += searcher.ordering.firstCutoffs[d];
+      }
+    }
+    System.out.printf("%s: %.3fs\n", MODES[mode], (System.nanoTime() - t0) / 1e9);
+    return total;
+  }
+
+  static double percent(long a, long b) {
+    return 100.0 * a / Math.max(1, b);
+  }
+}
@@ -0,0 +1,355 @@
+package myplayer;
+
+import static ap25.Board.*;
+import static ap25.Color.*;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeSet;
+
+import ap25.*;
+
+/**
+ * パターンによる盤面評価を行うクラス。
+ * 辺・隅・中段の列・斜めの列のマスの並びを3進数（0:空きまたは障害物, 1:黒, 2:白）の番号に変換し、
+ * パターンの種類と進行度（ステージ）ごとの重みの表を引いて合計する。
+ * 盤面を8通りに回転・反転した同じ形のパターンは同じ重みの表を共有する。
+ * BitBoard に prepare で番号の配列を付けておくと、play/undo のたびに番号が差分で更新されるので、
+ * 評価は重みの表を引くだけで済む。
+ * 重みはファイルから読み込める。読み込まない場合は MyEval の重み行列 M と同じ値になる重みを使う。
+ */
+class MyPatternEval extends MyEval {
+  /** 重みファイルの先頭の識別子（"MYEV"） */
+  static final int MAGIC = 0x4D594556;
+  /** 重みファイルの形式の版 */
+  static final int VERSION = 1;
+  /** 進行度の段階の数 */
+  static final int STAGES = 4;
+  /** 起動時に読み込む重みファイルを指定するシステムプロパティ */
+  static final String WEIGHTS_PROPERTY = "myplayer.weights";
+  /** 起動時に読み込む重みファイルのデフォルトのパス */
+  static final String DEFAULT_WEIGHTS_FILE = "weights.bin";
+
+  /**
+   * パターンの種類ごとの基本形（{列, 行} の並び）
+   * 辺+X、隅の3x3、2列目、3列目、長さ6・5・4の斜め
+   */
+  static final int[][][] SHAPES = {
+    { {0, 0}, {1, 0}, {2, 0}, {3, 0}, {4, 0}, {5, 0}, {1, 1}, {4, 1} },
+    { {0, 0}, {1, 0}, {2, 0}, {0, 1}, {1, 1}, {2, 1}, {0, 2}, {1, 2}, {2, 2} },
+    { {0, 1}, {1, 1}, {2, 1}, {3, 1}, {4, 1}, {5, 1} },
+    { {0, 2}, {1, 2}, {2, 2}, {3, 2}, {4, 2}, {5, 2} },
+    { {0, 0}, {1, 1}, {2, 2}, {3, 3}, {4, 4}, {5, 5} },
+    { {1, 0}, {2, 1}, {3, 2}, {4, 3}, {5, 4} },
+    { {2, 0}, {3, 1}, {4, 2}, {5, 3} },
+  };
+  /** パターンの種類の名前（表示用） */
+  static final String[] SHAPE_NAMES = {
+    "edge+x", "corner3x3", "line2", "line3", "diag6", "diag5", "diag4",
+  };
+
+  /** 盤面上のパターンごとのマスの位置の並び */
+  static final int[][] PATTERNS;
+  /** 盤面上のパターンごとの種類の番号 */
+  static final int[] TYPES;
+  /** 種類ごとのパターンの番号の数（3のマス数乗） */
+  static final int[] SIZES = new int[SHAPES.length];
+  /** マスごとの、そのマスを含むパターンの番号 */
+  static final int[][] SQUARE_PATTERNS = new int[LENGTH][];
+  /** マスごとの、SQUARE_PATTERNS の各パターンでのそのマスの重み（3のべき乗） */
+  static final int[][] SQUARE_POWERS = new int[LENGTH][];
+
+  static {
+    var patterns = new ArrayList<int[]>();
+    var types = new ArrayList<Integer>();
+    for (int t = 0; t < SHAPES.length; t++) {
+      SIZES[t] = (int) Math.pow(3, SHAPES[t].length);
+      var seen = new ArrayList<TreeSet<Integer>>();
+      for (int s = 0; s < 8; s++) {
+        var cells = new int[SHAPES[t].length];
+        var set = new TreeSet<Integer>();
+        for (int i = 0; i < cells.length; i++) {
+          cells[i] = transform(SHAPES[t][i][0], SHAPES[t][i][1], s);
+          set.add(cells[i]);
+        }
+        if (seen.contains(set)) continue;
+        seen.add(set);
+        patterns.add(cells);
+        types.add(t);
+      }
+    }
+    PATTERNS = patterns.toArray(int[][]::new);
+    TYPES = types.stream().mapToInt(t -> t).toArray();
+
+    for (int k = 0; k < LENGTH; k++) {
+      var ps = new ArrayList<Integer>();
+      var pws = new ArrayList<Integer>();
+      for (int p = 0; p < PATTERNS.length; p++) {
+        for (int i = 0, pw = 1; i < PATTERNS[p].length; i++, pw *= 3) {
+          if (PATTERNS[p][i] == k) {
+            ps.add(p);
+            pws.add(pw);
+          }
+        }
+      }
+      SQUARE_PATTERNS[k] = ps.stream().mapToInt(x -> x).toArray();
+      SQUARE_POWERS[k] = pws.stream().mapToInt(x -> x).toArray();
+    }
+  }
+
+  /**
+   * 盤面の対称変換（8通り）を適用したマスの位置を返す
+   * @param s 変換の番号（ビット0:左右反転, ビット1:上下反転, ビット2:対角線で反転）
+   */
+  static int transform(int col, int row, int s) {
+    if ((s & 1) != 0) col = SIZE - 1 - col;
+    if ((s & 2) != 0) row = SIZE - 1 - row;
+    if ((s & 4) != 0) { int t = col; col = row; row = t; }
+    return Move.index(col, row);
+  }
+
+  /** 起動時に読み込んだ評価関数（最初に必要になったときに読み込み、全プレイヤーで共有する） */
+  static MyPatternEval defaultEval;
+
+  /** 重みの表（[種類][進行度][パターンの番号]） */
+  float[][][] weights;
+
+  /**
+   * デフォルトコンストラクタ
+   * MyEval の重み行列 M と同じ評価値になる重みを使う
+   */
+  MyPatternEval() {
+    this(fromMatrix(M));
+  }
+
+  /**
+   * 重みの表を指定して作成する
+   * @param weights 重みの表（[種類][進行度][パターンの番号]）
+   */
+  MyPatternEval(float[][][] weights) {
+    this.weights = weights;
+  }
+
+  /**
+   * 重み行列と同じ評価値になる重みの表を作る
+   * 各マスの重みを、そのマスを含むパターンの数で等分して各パターンに割り振る
+   */
+  static float[][][] fromMatrix(float[][] m) {
+    var weights = new float[SHAPES.length][STAGES][];
+    for (int t = 0; t < SHAPES.length; t++) {
+      var cells = PATTERNS[first(t)];
+      var table = new float[SIZES[t]];
+      for (int index = 0; index < SIZES[t]; index++) {
+        float v = 0;
+        for (int i = 0, x = index; i < cells.length; i++, x /= 3) {
+          int k = cells[i];
+          v += m[k / SIZE][k % SIZE] * value(x % 3) / SQUARE_PATTERNS[k].length;
+        }
+        table[index] = v;
+      }
+      for (int s = 0; s < STAGES; s++) weights[t][s] = table.clone();
+    }
+    return weights;
+  }
+
+  /**
+   * 指定された種類の最初のパターンの番号を返す
+   */
+  static int first(int type) {
+    for (int p = 0; p < TYPES.length; p++)
+      if (TYPES[p] == type) return p;
+    throw new IllegalArgumentException("no pattern of type " + type);
+  }
+
+  /**
+   * マスの状態の番号を石の色の値（黒 1、白 -1、それ以外 0）に変換する
+   */
+  static int value(int code) {
+    return code == 1 ? 1 : code == 2 ? -1 : 0;
+  }
+
+  /**
+   * マスの色を3進数の桁の値に変換する
+   */
+  static int code(Color color) {
+    return color == BLACK ? 1 : color == WHITE ? 2 : 0;
+  }
+
+  /**
+   * 空きマス数から進行度の段階を求める
+   */
+  static int stage(int empties) {
+    return Math.max(0, Math.min(STAGES - 1, (LENGTH - 4 - empties) * STAGES / (LENGTH - 4)));
+  }
+
+  /**
+   * 盤面の全パターンの番号を計算する
+   * @param board 盤面
+   * @param indexes 書き込み先の配列（長さ PATTERNS.length）
+   * @return indexes
+   */
+  static int[] indexes(Board board, int[] indexes) {
+    for (int p = 0; p < PATTERNS.length; p++) {
+      int index = 0;
+      for (int i = PATTERNS[p].length - 1; i >= 0; i--)
+        index = index * 3 + code(board.get(PATTERNS[p][i]));
+      indexes[p] = index;
+    }
+    return indexes;
+  }
+
+  /**
+   * 黒石と白石のマスクから全パターンの番号を計算する
+   * @param black 黒石のマスク
+   * @param white 白石のマスク
+   * @param indexes 書き込み先の配列（長さ PATTERNS.length）
+   * @return indexes
+   */
+  static int[] indexes(long black, long white, int[] indexes) {
+    for (int p = 0; p < PATTERNS.length; p++) {
+      int index = 0;
+      for (int i = PATTERNS[p].length - 1; i >= 0; i--) {
+        int k = PATTERNS[p][i];
+        index = index * 3 + (int) (black >>> k & 1) + 2 * (int) (white >>> k & 1);
+      }
+      indexes[p] = index;
+    }
+    return indexes;
+  }
+
+  /**
+   * BitBoard.apply による石の配置と反転をパターンの番号に反映する
+   * @param indexes パターンの番号の配列
+   * @param k 石を置いた（取り除いた）位置
+   * @param f 反転した石のマスク
+   * @param color 置いた石の色
+   * @param placed 石を置いた場合true、undo で取り除いた場合false
+   */
+  static void update(int[] indexes, int k, long f, Color color, boolean placed) {
+    int sign = placed ? 1 : -1;
+    add(indexes, k, sign * code(color));
+    // 反転した石は 2（白）→1（黒）または 1→2 に変わる
+    int flip = color == BLACK ? -1 : 1;
+    for (long x = f; x != 0; x &= x - 1)
+      add(indexes, Long.numberOfTrailingZeros(x), sign * flip);
+  }
+
+  /**
+   * 指定されたマスの桁の値を delta だけ変える
+   */
+  static void add(int[] indexes, int k, int delta) {
+    var ps = SQUARE_PATTERNS[k];
+    var pws = SQUARE_POWERS[k];
+    for (int i = 0; i < ps.length; i++) indexes[ps[i]] += delta * pws[i];
+  }
+
+  /**
+   * 探索する盤面にパターンの番号の配列を付ける。
+   * 以後の play/undo で番号が差分更新される。
+   * 既に配列が付いていれば、新しく確保せずに番号を計算し直す。
+   */
+  void prepare(BitBoard board) {
+    var indexes = board.patterns != null ? board.patterns : new int[PATTERNS.length];
+    board.patterns = indexes(board, indexes);
+  }
+
+  /**
+   * 盤面の評価値を計算する。
+   * ゲームが終了している場合は最終スコアに大きな重みを付ける。
+   * そうでない場合は全パターンの重みの合計を返す。
+   */
+  public float value(Board board) {
+    if (board.isEnd()) return 1000000 * board.score();
+
+    int[] indexes = null;
+    if (board instanceof BitBoard) indexes = ((BitBoard) board).patterns;
+    if (indexes == null) indexes = indexes(board, new int[PATTERNS.length]);
+
+    int stage = stage(board.count(NONE));
+    float v = 0;
+    for (int p = 0; p < indexes.length; p++) v += this.weights[TYPES[p]][stage][indexes[p]];
+    return v;
+  }
+
+  /**
+   * プレイヤーが標準で使う評価関数を取得する
+   * システムプロパティ myplayer.weights（なければ weights.bin）の重みファイルがあれば読み込み、
+   * なければ重み行列 M と同じ重みを使う。重みは変更しないので、全プレイヤーで同じものを共有する。
+   * @throws UncheckedIOException 重みファイルがあるが読み込めない場合
+   */
+  static synchronized MyPatternEval loadDefault() {
+    if (defaultEval == null) {
+      var path = Path.of(System.getProperty(WEIGHTS_PROPERTY, DEFAULT_WEIGHTS_FILE));
+      try {
+        defaultEval = Files.exists(path) ? load(path) : new MyPatternEval();
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+    return defaultEval;
+  }
+
+  /**
+   * 重みファイルを読み込む
+   * 形式：識別子、版、種類の数、段階の数（各 int）、続いて種類ごとに
+   * パターンの番号の数（int）と、段階ごとの重み（float）の並び
+   * @throws IOException 読み込めない場合、またはパターンの定義と合わない場合
+   */
+  static MyPatternEval load(Path path) throws IOException {
+    try (var in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+      if (in.readInt() != MAGIC || in.readInt() != VERSION)
+        throw new IOException("not a weight file: " + path);
+      if (in.readInt() != SHAPES.length || in.readInt() != STAGES)
+        throw new IOException("weight file does not match patterns: " + path);
+      var weights = new float[SHAPES.length][STAGES][];
+      for (int t = 0; t < SHAPES.length; t++) {
+        if (in.readInt() != SIZES[t])
+          throw new IOException("weight file does not match patterns: " + path);
+        for (int s = 0; s < STAGES; s++) {
+          weights[t][s] = new float[SIZES[t]];
+          for (int i = 0; i < SIZES[t]; i++) weights[t][s][i] = in.readFloat();
+        }
+      }
+      return new MyPatternEval(weights);
+    }
+  }
+
+  /**
+   * 重みを load で読める形式で保存する
+   */
+  void save(Path path) throws IOException {
+    try (var out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path)))) {
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeInt(SHAPES.length);
+      out.writeInt(STAGES);
+      for (int t = 0; t < SHAPES.length; t++) {
+        out.writeInt(SIZES[t]);
+        for (int s = 0; s < STAGES; s++)
+          for (float w : this.weights[t][s]) out.writeFloat(w);
+      }
+    }
+  }
+
+  /**
+   * パターンの定義を表示する
+   */
+  public static void main(String args[]) {
+    for (int p = 0; p < PATTERNS.length; p++) {
+      List<String> cells = new ArrayList<>();
+      for (int k : PATTERNS[p]) cells.add(Move.toIndexString(k));
+      System.out.printf("%-10s %s\n", SHAPE_NAMES[TYPES[p]], cells);
+    }
+    System.out.printf("%d patterns, %d weights per stage\n",
+        PATTERNS.length, Arrays.stream(SIZES).sum());
+  }
+}
@@ -0,0 +1,181 @@
+package myplayer;
+
+import static ap25.Board.*;
+import static ap25.Color.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+
+import ap25.*;
+
+/**
+ * MyPatternEval のパターンの番号の差分更新と、重みファイルの保存・読み込みを確かめる検査ツール
+ * 乱数で選んだ手で BitBoard の play を進め（一部の対局では障害物を置く）、1手ごとに、
+ * 差分更新した番号が盤面から計算し直した番号と一致すること、
+ * 差分更新した番号での評価値が番号を付けない盤面の評価値と一致すること、
+ * placed()・flipped() で作った盤面の番号も一致することを確かめる。終局後は undo で初期盤面まで戻しながら、
+ * 各局面の番号に戻ることを確かめる。
+ * 重みは全パターンが効くように乱数で作り、save して load した重みと評価値が元と一致することも確かめる。
+ * 食い違いがあれば最初の1件を表示して終了コード1で終わる。
+ *
+ * 引数：
+ *   -games n  対局数（デフォルト 1000）
+ *   -seed n  乱数の種（デフォルト 0）
+ */
+public class MyPatternEvalCheck {
+  /** 障害物を置く対局の割合（この数に1局） */
+  static final int BLOCKED_GAME_INTERVAL = 3;
+  /** 障害物を置く対局での障害物の数の上限 */
+  static final int MAX_BLOCKS = 4;
+
+  /** 検査する評価関数（重みは乱数） */
+  MyPatternEval eval;
+  /** 比べた局面の数 */
+  long positions;
+  /** 最初の食い違い（なければnull） */
+  String failure;
+
+  public static void main(String args[]) throws IOException {
+    var games = 1000;
+    var seed = 0L;
+    for (int i = 0; i + 1 < args.length; i += 2) {
+      switch (args[i]) {
+      case "-games": games = Integer.parseInt(args[i + 1]); break;
+      case "-seed": seed = Long.parseLong(args[i + 1]); break;
+      default: throw new IllegalArgumentException("unknown option: " + args[i]);
+      }
+    }
+
+    var rand = new Random(seed);
+    var check = new MyPatternEvalCheck(randomWeights(rand));
+    var ok = check.run(rand, games) && check.roundTrip(rand);
+    System.out.printf("%d games, %d positions: %s\n", games, check.positions, ok ? "ok" : "NG");
+    if (ok == false) {
+      System.out.println(check.failure);
+      System.exit(1);
+    }
+  }
+
+  /**
+   * コンストラクタ
+   * @param weights 検査に使う重みの表
+   */
+  MyPatternEvalCheck(float[][][] weights) {
+    this.eval = new MyPatternEval(weights);
+  }
+
+  /**
+   * 全パターンの全番号に乱数の重みを付けた表を作る
+   */
+  static float[][][] randomWeights(Random rand) {
+    var weights = new float[MyPatternEval.SHAPES.length][MyPatternEval.STAGES][];
+    for (int t = 0; t < weights.length; t++) {
+      for (int s = 0; s < MyPatternEval.STAGES; s++) {
+        weights[t][s] = new float[MyPatternEval.SIZES[t]];
+        for (int i = 0; i < weights[t][s].length; i++) weights[t][s][i] = (float) rand.nextGaussian();
+      }
+    }
+    return weights;
+  }
+
+  /**
+   * 指定された数の対局で差分更新を確かめる
+   * @return すべて一致すればtrue
+   */
+  boolean run(Random rand, int games) {
+    var moves = new int[LENGTH];
+    var history = new int[2 * LENGTH + 2][];
+    for (int g = 0; g < games; g++) {
+      var board = new BitBoard();
+      if (g % BLOCKED_GAME_INTERVAL == 0) {
+        for (int i = rand.nextInt(MAX_BLOCKS + 1); i > 0; i--) {
+          int k = rand.nextInt(LENGTH);
+          if (board.get(k) == NONE) board.set(k, BLOCK);
+        }
+      }
+      this.eval.prepare(board);
+
+      int ply = 0;
+      while (true) {
+        if (compare(board, g) == false) return false;
+        history[ply++] = board.patterns.clone();
+        if (board.isEnd()) break;
+        var turn = board.getTurn();
+        int k = moves[rand.nextInt(board.findLegalIndexes(turn, moves))];
+        var placed = board.placed(BitBoard.moveOf(k, turn));
+        board.play(k, turn);
+        if (Arrays.equals(placed.patterns, board.patterns) == false)
+          return fail(g, "placed() differs from play()", board);
+      }
+
+      for (int i = ply - 2; i >= 0; i--) {
+        board.undo();
+        if (Arrays.equals(history[i], board.patterns) == false) return fail(g, "undo", board);
+      }
+    }
+    return true;
+  }
+
+  /**
+   * 差分更新した番号と評価値を、計算し直した値と比べる
+   * @param game 対局の番号（食い違いの報告に使う）
+   * @return 一致すればtrue
+   */
+  boolean compare(BitBoard board, int game) {
+    this.positions++;
+    var expected = MyPatternEval.indexes(board, new int[MyPatternEval.PATTERNS.length]);
+    if (Arrays.equals(expected, board.patterns) == false) return fail(game, "indexes", board);
+    var masks = MyPatternEval.indexes(board.black, board.white, new int[MyPatternEval.PATTERNS.length]);
+    if (Arrays.equals(expected, masks) == false) return fail(game, "indexes from masks", board);
+
+    var bare = board.clone();
+    bare.patterns = null;
+    if (this.eval.value(board) != this.eval.value(bare)) return fail(game, "value", board);
+
+    var flipped = board.flipped();
+    var flippedExpected = MyPatternEval.indexes(flipped, new int[MyPatternEval.PATTERNS.length]);
+    if (Arrays.equals(flippedExpected, flipped.patterns) == false) return fail(game, "flipped() indexes", board);
+    return true;
+  }
+
+  /**
+   * 重みを一時ファイルに保存して読み込み、重みと評価値が元と一致することを確かめる
+   * @return 一致すればtrue
+   */
+  boolean roundTrip(Random rand) throws IOException {
+    var path = Files.createTempFile("weights", ".bin");
+    try {
+      this.eval.save(path);
+      var loaded = MyPatternEval.load(path);
+      if (Arrays.deepEquals(this.eval.weights, loaded.weights) == false)
+        return fail(-1, "weights after save/load", new BitBoard());
+      for (int i = 0; i < 100; i++) {
+        var board = MyEndgameSolver.randomPosition(rand, 1 + rand.nextInt(LENGTH - 5));
+        if (this.eval.value(board) != loaded.value(board)) return fail(-1, "value after save/load", board);
+      }
+
+      // 形式の違うファイルは読み込まない
+      Files.write(path, new byte[] { 0, 1, 2, 3, 4, 5, 6, 7 });
+      try {
+        MyPatternEval.load(path);
+        return fail(-1, "load accepted a broken file", new BitBoard());
+      } catch (IOException e) {
+        return true;
+      }
+    } finally {
+      Files.deleteIfExists(path);
+    }
+  }
+
+  /**
+   * 食い違いを記録する
+   * @param game 対局の番号（保存・読み込みの検査では -1）
+   * @return 常にfalse
+   */
+  boolean fail(int game, String what, Board board) {
+    this.failure = String.format("game %d: %s differs\n%s", game, what, board);
+    return false;
+  }
+}
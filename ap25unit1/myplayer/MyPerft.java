@@ -0,0 +1,243 @@
+package myplayer;
+
+import static ap25.Board.*;
+import static ap25.Color.*;
+
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import ap25.*;
+
+/**
+ * 合法手生成の正しさと速さを確かめる perft（末端局面数の数え上げ）ツール
+ * 指定された局面から深さ N までのすべての手順をたどり、深さ N の局面の数を数える。
+ * 打てる手がない場合は findLegalMoves と同じくパスを1手として数え、
+ * 深さ N に達する前に終局した局面はそこで1局面として数える。
+ *
+ * 引数：
+ *   -board my|bit  使う盤面の実装（デフォルト bit。bit は標準の大きさなら BitBoard、それ以外は MyVariantBoard）
+ *   -threads n  ルートの手ごとに分けて並列に数えるスレッド数（デフォルト 1）
+ *   -size n  盤面の一辺のマス数（デフォルトは標準の大きさ）
+ *   -blocks n  初期配置にランダムに置く障害物の数（デフォルト 0）
+ *   -seed n  障害物を置く乱数の種（デフォルト 0）
+ *   -position 局面  開始局面（format で作る文字列。文字列の長さで大きさが決まり、-size と -blocks より優先する）
+ *   -verify  既知の局面数と照合し、一致しなければ終了コード1で終わる
+ *   深さ  数える最大の深さ（デフォルト 8）
+ */
+public class MyPerft {
+  /** 初期配置に障害物を置いた照合用の局面 */
+  static final String BLOCKED_POSITION =
+      "#-----" + "------" + "--ox#-" + "--xo--" + "-#----" + "-----#" + " o";
+  /** 8x8 の初期配置 */
+  static final String INITIAL_8 =
+      "--------" + "--------" + "--------" + "---ox---" + "---xo---" + "--------" + "--------" + "--------" + " o";
+  /** 8x8 の初期配置に障害物を置いた照合用の局面 */
+  static final String BLOCKED_8 =
+      "#------#" + "--------" + "--#-----" + "---ox---" + "---xo---" + "-----#--" + "--------" + "#------#" + " o";
+
+  /**
+   * 照合用の既知の局面数（{名前, 局面, 深さ1からの局面数...}）
+   * MyBoard で数えた値で、BitBoard など他の実装はこれと一致しなければならない
+   * （8x8 の初期配置の値は通常のオセロの perft として知られている値と一致する）
+   */
+  static final Object[][] KNOWN = {
+    { "initial", null, new long[] { 4, 12, 56, 244, 1364, 7604, 47740, 308716, 2114912 } },
+    { "blocked", BLOCKED_POSITION, new long[] { 3, 7, 29, 105, 491, 2271, 11349, 60540, 322203 } },
+    { "8x8", INITIAL_8, new long[] { 4, 12, 56, 244, 1396, 8200, 55092, 390216 } },
+    { "8x8 blocked", BLOCKED_8, new long[] { 4, 12, 48, 200, 1000, 5432, 32140, 206180 } },
+  };
+
+  public static void main(String args[]) throws InterruptedException, ExecutionException {
+    var kind = "bit";
+    var threads = 1;
+    String position = null;
+    var size = SIZE;
+    var blocks = 0;
+    var seed = 0L;
+    var verify = false;
+    var depth = 8;
+    for (int i = 0; i < args.length; i++) {
+      switch (args[i]) {
+      case "-board": kind = args[++i]; break;
+      case "-threads": threads = Integer.parseInt(args[++i]); break;
+      case "-size": size = Integer.parseInt(args[++i]); break;
+      case "-blocks": blocks = Integer.parseInt(args[++i]); break;
+      case "-seed": seed = Long.parseLong(args[++i]); break;
+      case "-position": position = args[++i]; break;
+      case "-verify": verify = true; break;
+      default: depth = Integer.parseInt(args[i]); break;
+      }
+    }
+
+    var executor = threads > 1 ? Executors.newFixedThreadPool(threads) : null;
+    try {
+      var perft = new MyPerft(executor);
+      if (verify) {
+        System.exit(perft.verify(kind) ? 0 : 1);
+      }
+      var geometry = MyGeometry.random(new Random(seed), size, blocks);
+      var board = create(kind, geometry, position);
+      System.out.println(board);
+      for (int d = 1; d <= depth; d++) {
+        long t0 = System.nanoTime();
+        long nodes = perft.count(board, d);
+        long nanos = System.nanoTime() - t0;
+        System.out.printf("depth %2d  %14d  %8.3fs  %8.2f Mnps\n",
+            d, nodes, nanos / 1e9, nodes * 1e3 / Math.max(1, nanos));
+      }
+    } finally {
+      if (executor != null) executor.shutdown();
+    }
+  }
+
+  /** ルートの手ごとに並列に数える場合の Executor（null なら逐次） */
+  ExecutorService executor;
+
+  /**
+   * コンストラクタ
+   * @param executor 並列に数える場合の Executor（null なら逐次）
+   */
+  public MyPerft(ExecutorService executor) {
+    this.executor = executor;
+  }
+
+  /**
+   * 既知の局面数と照合する
+   * @param kind 盤面の実装（my または bit）
+   * @return すべて一致すればtrue
+   */
+  boolean verify(String kind) throws InterruptedException, ExecutionException {
+    var ok = true;
+    for (var known : KNOWN) {
+      var board = create(kind, MyGeometry.STANDARD, (String) known[1]);
+      var counts = (long[]) known[2];
+      for (int d = 1; d <= counts.length; d++) {
+        long nodes = count(board, d);
+        var match = nodes == counts[d - 1];
+        ok &= match;
+        System.out.printf("%s depth %2d  %12d  %s\n", known[0], d, nodes, match ? "ok" : "NG (" + counts[d - 1] + ")");
+      }
+    }
+    return ok;
+  }
+
+  /**
+   * 深さ depth の局面数を数える
+   * executor があればルートの手ごとに分けて並列に数える
+   */
+  public long count(Board board, int depth) throws InterruptedException, ExecutionException {
+    if (this.executor == null || depth < 2 || board.isEnd())
+      return perft(board, depth);
+
+    var futures = new ArrayList<Future<Long>>();
+    for (var move : board.findLegalMoves(board.getTurn())) {
+      var child = board.placed(move);
+      futures.add(this.executor.submit(() -> perft(child, depth - 1)));
+    }
+    long nodes = 0;
+    for (var future : futures) nodes += future.get();
+    return nodes;
+  }
+
+  /**
+   * 深さ depth の局面数を数える
+   * BitBoard の場合は play/undo を使う専用の処理で数える
+   */
+  public static long perft(Board board, int depth) {
+    if (board instanceof BitBoard)
+      return perft((BitBoard) board.clone(), depth, new int[depth + 1][LENGTH]);
+    return perftGeneric(board, depth);
+  }
+
+  /**
+   * Board インタフェースだけを使って数える（すべての実装の基準）
+   */
+  static long perftGeneric(Board board, int depth) {
+    if (depth == 0 || board.isEnd()) return 1;
+    long nodes = 0;
+    for (var move : board.findLegalMoves(board.getTurn()))
+      nodes += perftGeneric(board.placed(move), depth - 1);
+    return nodes;
+  }
+
+  /**
+   * BitBoard の play/undo を使って数える
+   */
+  static long perft(BitBoard board, int depth, int[][] buffers) {
+    if (depth == 0) return 1;
+    var turn = board.getTurn();
+    long legal = board.legalMask(turn);
+    if (legal == 0 && board.legalMask(turn.flipped()) == 0) return 1;
+    if (depth == 1) return legal == 0 ? 1 : Long.bitCount(legal);
+
+    var moves = buffers[depth];
+    int n = board.findLegalIndexes(turn, moves);
+    long nodes = 0;
+    for (int i = 0; i < n; i++) {
+      board.play(moves[i], turn);
+      nodes += perft(board, depth - 1, buffers);
+      board.undo();
+    }
+    return nodes;
+  }
+
+  /**
+   * 指定された実装で盤面を作る
+   * @param kind my または bit（標準の大きさなら BitBoard、それ以外は MyVariantBoard）
+   * @param geometry 盤面の形（局面の文字列を指定した場合は使わない）
+   * @param position 局面の文字列（null なら geometry の初期配置）
+   */
+  static Board create(String kind, MyGeometry geometry, String position) {
+    var parsed = position == null ? new MyVariantBoard(geometry) : parse(position);
+    if (kind.equals("my")) {
+      var b = new MyBoard(parsed.geometry);
+      for (int k = 0; k < parsed.geometry.length; k++) b.set(k, parsed.get(k));
+      b.move = parsed.getMove();
+      return b;
+    }
+    return parsed.geometry.isStandardSize() ? BitBoard.of(parsed) : parsed;
+  }
+
+  /**
+   * 局面の文字列を読み込む
+   * 形式は 一辺 * 一辺 文字のマスの並び（o:黒、x:白、#:障害物、-:空き。a1, b1, ... の順）、
+   * 空白、手番（o または x）。障害物の配置は盤面の形（MyGeometry）の一部として扱う
+   */
+  public static MyVariantBoard parse(String position) {
+    int length = position.indexOf(' ');
+    long blocks = 0;
+    for (int k = 0; k < length; k++)
+      if (position.charAt(k) == '#') blocks |= 1L << k;
+    var geometry = MyGeometry.of((int) Math.sqrt(length), blocks);
+    if (geometry.length != length)
+      throw new IllegalArgumentException("invalid position: " + position);
+
+    var board = new MyVariantBoard(geometry, 0, 0, blocks, Move.ofPass(NONE));
+    for (int k = 0; k < length; k++) {
+      switch (position.charAt(k)) {
+      case 'o': board.set(k, BLACK); break;
+      case 'x': board.set(k, WHITE); break;
+      default: break;
+      }
+    }
+    var turn = position.charAt(length + 1) == 'x' ? WHITE : BLACK;
+    if (turn == WHITE) board.move = Move.ofPass(BLACK);
+    return board;
+  }
+
+  /**
+   * 標準の大きさの局面を parse で読める文字列にする
+   */
+  public static String format(Board board) {
+    var buf = new StringBuilder();
+    for (int k = 0; k < LENGTH; k++) {
+      var c = board.get(k);
+      buf.append(c == BLACK ? 'o' : c == WHITE ? 'x' : c == BLOCK ? '#' : '-');
+    }
+    return buf.append(' ').append(board.getTurn() == WHITE ? 'x' : 'o').toString();
+  }
+}
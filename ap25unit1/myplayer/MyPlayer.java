@@ -4,101 +4,232 @@ import static ap25.Board.*;
 import static ap25.Color.*;
 
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
-import java.util.stream.IntStream;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import ap25.*;
 
-/**
- * 盤面評価を行うクラス。
- * 盤面の各マスに重み付けを行い、全体の評価値を計算する。
- */
-class MyEval {
-  /**
-   * 盤面評価用の重み行列。
-   * 各マスの重要度を表す値が格納されている。
-   * 角とその周辺が高い値になっている。
-   */
-  static float[][] M = {
-      { 10,  10, 10, 10,  10,  10},
-      { 10,  -5,  1,  1,  -5,  10},
-      { 10,   1,  1,  1,   1,  10},
-      { 10,   1,  1,  1,   1,  10},
-      { 10,  -5,  1,  1,  -5,  10},
-      { 10,  10, 10, 10,  10,  10},
-  };
-
-  /**
-   * 盤面の評価値を計算する。
-   * ゲームが終了している場合は最終スコアに大きな重みを付ける。
-   * そうでない場合は全マスの重み付け合計を返す。
-   */
-  public float value(Board board) {
-    if (board.isEnd()) return 1000000 * board.score();
-
-    return (float) IntStream.range(0, LENGTH)
-      .mapToDouble(k -> score(board, k))
-      .reduce(Double::sum).orElse(0);
-  }
-
-  /**
-   * 指定された位置の評価値を計算する。
-   * マスの重みと石の色の値を掛け合わせる。
-   */
-  float score(Board board, int k) {
-    return M[k / SIZE][k % SIZE] * board.get(k).getValue();
-  }
-}
-
 /**
  * オセロAIプレイヤーを実装するクラス。
- * α-β法を使用したミニマックス探索で最適な手を探す。
+ * α-β法（ネガマックス法による PVS）で最適な手を探す。
+ * スレッド数を2以上にすると、置換表を共有した複数のスレッドで同じ局面を探索する（Lazy SMP）。
+ * 手を決めるのは常に主スレッドの探索結果で、他のスレッドは置換表を埋める役割を持つ。
+ * ポンダーを有効にすると、手を返した後も相手の手を予想してその後の局面を別スレッドで探索し、
+ * 結果を置換表に残して次の think で使う。予想が外れた場合はその探索を止めて捨てる。
+ * 補助スレッドとポンダーのスレッドは close で止めるので、スレッド数が2以上かポンダーを使うプレイヤーは使い終わったら閉じる。
  */
-public class MyPlayer extends ap25.Player {
+public class MyPlayer extends ap25.Player implements MyClock.DeadlineAware, AutoCloseable {
   /** プレイヤー名 */
   static final String MY_NAME = "MY24";
+  /** 置換表のデフォルトのメモリ量（MB） */
+  static final int DEFAULT_TABLE_MEGABYTES = 16;
+  /** 時間制御ありのときの探索の深さの上限 */
+  static final int MAX_DEPTH = LENGTH;
+  /** 持ち時間のうち使わずに残しておく時間（ナノ秒） */
+  static final long TIME_MARGIN_NANOS = 1_000_000_000L;
+  /** 完全読みに切り替える空きマス数のデフォルト値 */
+  static final int DEFAULT_ENDGAME_EMPTIES = 16;
   /** 盤面評価オブジェクト */
   MyEval eval;
-  /** 探索の深さ制限 */
+  /** 探索の深さ制限（反復深化の最大の深さ） */
   int depthLimit;
+  /** 1ゲームの持ち時間（秒）。0 のときは時間制御を行わない */
+  float timeLimitSeconds;
+  /** このゲームで think に使った時間の合計（ナノ秒） */
+  long usedNanos;
+  /** 対局から渡された think の締め切り（System.nanoTime() の値。渡されていなければ Long.MAX_VALUE） */
+  long deadline = Long.MAX_VALUE;
+  /** 直近の think で最後まで探索できた深さ */
+  int depthReached;
+  /** 終盤の完全読み（最初に必要になったときに作る） */
+  MyEndgameSolver solver;
+  /** 完全読みの置換表のメモリ量（MB） */
+  int endgameTableMegabytes = MyEndgameSolver.DEFAULT_TABLE_MEGABYTES;
+  /** 空きマスがこの数以下になったら完全読みに切り替える */
+  int endgameEmpties = DEFAULT_ENDGAME_EMPTIES;
   /** 現在選択中の手 */
   Move move;
   /** 内部盤面表現 */
-  MyBoard board;
+  BitBoard board;
+  /** 置換表（think をまたいで再利用し、全スレッドで共有する） */
+  TranspositionTable table;
+  /** 探索スレッドの停止フラグ */
+  AtomicBoolean stop = new AtomicBoolean();
+  /** スレッドごとの探索（0番が主スレッド） */
+  MySearch[] searchers;
+  /** 補助スレッドを実行する Executor（最初に必要になったときに作る） */
+  ExecutorService helpers;
+  /** close を呼んだかどうか */
+  boolean closed;
+  /** 直近の think で探索したノード数（全スレッドの合計） */
+  long nodes;
+  /** 直近の think で選んだ手の評価値（手番側から見た値。完全読みの場合は石数の差） */
+  float score;
+  /** 探索の前に引く定石（null なら使わない） */
+  MyOpeningBook book;
+  /** 直近の think の統計 */
+  MySearchStats stats;
+  /** このゲームの統計の合計（setBoard で 0 に戻す） */
+  MySearchStats gameStats;
+  /** think が手を決めるたびに統計を受け取るリスナー（null なら呼ばない） */
+  MySearchStats.Listener listener;
+  /** 相手の手番の間も探索するかどうか（ポンダー） */
+  boolean ponder;
+  /** ポンダーの探索（置換表は think の探索と共有する。最初に必要になったときに作る） */
+  MySearch ponderSearcher;
+  /** ポンダーの停止フラグ */
+  AtomicBoolean ponderStop = new AtomicBoolean();
+  /** ポンダーを実行する Executor（最初に必要になったときに作る） */
+  ExecutorService ponderer;
+  /** 実行中のポンダー（なければnull） */
+  Future<?> pondering;
+  /** ポンダーで予想した相手の手の位置（予想できずに相手の局面そのものを探索している場合は TranspositionTable.NO_MOVE） */
+  int ponderMove;
 
   /**
    * 色のみを指定するコンストラクタ。
-   * デフォルトのプレイヤー名、評価関数、深さ制限2で初期化する。
+   * デフォルトのプレイヤー名、評価関数で初期化し、
+   * MyGame の持ち時間を使い切るように反復深化で探索する。
    */
   public MyPlayer(Color color) {
-    this(MY_NAME, color, new MyEval(), 2);
+    this(MY_NAME, color, MyPatternEval.loadDefault(), MAX_DEPTH, DEFAULT_TABLE_MEGABYTES,
+        MyGame.TIME_LIMIT_SECONDS);
+    this.book = MyOpeningBook.loadDefault();
   }
 
   /**
    * すべてのパラメータを指定するコンストラクタ。
+   * 時間制御は行わず、常に深さ制限まで探索する。
    */
   public MyPlayer(String name, Color color, MyEval eval, int depthLimit) {
+    this(name, color, eval, depthLimit, DEFAULT_TABLE_MEGABYTES);
+  }
+
+  /**
+   * 置換表のメモリ量（MB）も指定するコンストラクタ。
+   */
+  public MyPlayer(String name, Color color, MyEval eval, int depthLimit, int tableMegabytes) {
+    this(name, color, eval, depthLimit, tableMegabytes, 0);
+  }
+
+  /**
+   * 1ゲームの持ち時間（秒）も指定するコンストラクタ。
+   * 持ち時間が正のときは、残り時間と空きマス数から1手の時間を割り当てて反復深化を打ち切る。
+   */
+  public MyPlayer(String name, Color color, MyEval eval, int depthLimit, int tableMegabytes,
+      float timeLimitSeconds) {
+    this(name, color, eval, depthLimit, tableMegabytes, timeLimitSeconds, 1);
+  }
+
+  /**
+   * 探索スレッド数も指定するコンストラクタ。
+   * スレッド数が1のときは、同じ局面に対して常に同じ手を返す。
+   */
+  public MyPlayer(String name, Color color, MyEval eval, int depthLimit, int tableMegabytes,
+      float timeLimitSeconds, int threads) {
     super(name, color);
     this.eval = eval;
     this.depthLimit = depthLimit;
-    this.board = new MyBoard();
+    this.timeLimitSeconds = timeLimitSeconds;
+    this.board = new BitBoard();
+    this.table = new TranspositionTable(tableMegabytes);
+    this.stats = new MySearchStats(depthLimit);
+    this.gameStats = new MySearchStats(depthLimit);
+    this.searchers = new MySearch[Math.max(1, threads)];
+    for (int i = 0; i < this.searchers.length; i++)
+      this.searchers[i] = new MySearch(eval, this.table, this.stop, depthLimit);
+    // 補助スレッドは主スレッドと違う順序で探索して置換表を埋めるように、並び順をばらつかせる
+    for (int i = 1; i < this.searchers.length; i++)
+      this.searchers[i].ordering.randomize = true;
   }
 
   /**
    * 評価関数にデフォルト値を使用するコンストラクタ。
    */
   public MyPlayer(String name, Color color, int depthLimit) {
-    this(name, color, new MyEval(), depthLimit);
+    this(name, color, MyPatternEval.loadDefault(), depthLimit);
   }
 
   /**
    * 内部盤面表現を更新する。
    */
   public void setBoard(Board board) {
-    for (var i = 0; i < LENGTH; i++) {
-      this.board.set(i, board.get(i));
-    }
+    stopPondering();
+    // 完全読みの置換表は think の時間に数えないように、ここで作っておく
+    if (this.endgameEmpties > 0) solver();
+    this.board = BitBoard.of(board);
+    this.usedNanos = 0;
+    this.deadline = Long.MAX_VALUE;
+    this.gameStats.clear();
+  }
+
+  /**
+   * 対局の時計による締め切りを設定する。
+   * 持ち時間を自分で数えた残りより締め切りまでが短ければ、そちらに合わせて時間を割り当てる。
+   */
+  public void setDeadline(long deadline) {
+    this.deadline = deadline;
+  }
+
+  /**
+   * 完全読みに切り替える空きマス数を設定する。0 にすると完全読みを行わない。
+   */
+  public void setEndgameEmpties(int empties) {
+    this.endgameEmpties = empties;
+  }
+
+  /**
+   * 完全読みの置換表のメモリ量（MB）を設定する。完全読みは次に必要になったときにこの大きさで作る。
+   */
+  public void setEndgameTableMegabytes(int megabytes) {
+    this.endgameTableMegabytes = megabytes;
+    this.solver = null;
+  }
+
+  /**
+   * 完全読みを取得する（なければ作る）。
+   */
+  MyEndgameSolver solver() {
+    if (this.solver == null) this.solver = new MyEndgameSolver(this.endgameTableMegabytes);
+    return this.solver;
+  }
+
+  /**
+   * 探索の前に引く定石を設定する。null にすると定石を使わない。
+   */
+  public void setBook(MyOpeningBook book) {
+    this.book = book;
+  }
+
+  /**
+   * think が手を決めるたびに統計を受け取るリスナーを設定する。null にすると呼ばない。
+   */
+  public void setListener(MySearchStats.Listener listener) {
+    this.listener = listener;
+  }
+
+  /**
+   * ポンダー（相手の手番の間の探索）を行うかどうかを設定する。
+   * ポンダーは相手の思考時間に CPU を使うので、同じプロセスで相手も探索する場合は相手の探索が遅くなる。
+   */
+  public void setPonder(boolean ponder) {
+    this.ponder = ponder;
+    if (ponder == false) stopPondering();
+  }
+
+  /**
+   * 手の並び替えに使う乱数の種を設定する。
+   * 各スレッドには種に番号を足した値を設定する。
+   * 乱数を使うのは補助スレッドの並び替えだけなので、スレッド数が1のときの結果は種によらない。
+   */
+  public void setSeed(long seed) {
+    for (int i = 0; i < this.searchers.length; i++)
+      this.searchers[i].ordering.rand.setSeed(seed + i);
   }
 
   /**
@@ -108,91 +239,350 @@ public class MyPlayer extends ap25.Player {
 
   /**
    * AIの思考ルーチン。次の一手を決定する。
-   * パスが必要な場合はパスを返し、そうでない場合はミニマックス探索で最適手を探す。
+   * パスが必要な場合はパスを返し、定石にある局面では定石の手を返し、
+   * そうでない場合はミニマックス探索で最適手を探す。
    */
   public Move think(Board board) {
-    this.board = this.board.placed(board.getMove());
+    long t0 = System.nanoTime();
+    var event = MySearchStats.ENABLED ? new MySearchEvent() : null;
+    if (event != null) event.begin();
+    // setBoard で受け取った盤面に相手の手がすでに反映されている場合は打ち直さない
+    var last = board.getMove();
+    boolean pondered = this.pondering != null && this.ponderMove != TranspositionTable.NO_MOVE;
+    stopPondering();
+    boolean ponderHit = pondered && last.getIndex() == this.ponderMove;
+    if (last.isPass() || last.isNone() || this.board.get(last.getIndex()) == NONE)
+      this.board = this.board.placed(last);
 
-    if (this.board.findNoPassLegalIndexes(getColor()).size() == 0) {
+    int bookMove = this.book == null ? -1 : this.book.lookup(this.board);
+    if (this.board.legalMask(getColor()) == 0) {
+      this.stats.clear();
       this.move = Move.ofPass(getColor());
+    } else if (bookMove >= 0) {
+      this.stats.clear();
+      this.stats.bookMoves = 1;
+      this.move = BitBoard.moveOf(bookMove, getColor());
     } else {
-      var newBoard = isBlack() ? this.board.clone() : this.board.flipped();
-      this.move = null;
-
-      maxSearch(newBoard, Float.NEGATIVE_INFINITY, Float.POSITIVE_INFINITY, 0);
-
-      this.move = this.move.colored(getColor());
+      this.move = search(this.board.clone(), getColor(), t0);
     }
 
     this.board = this.board.placed(this.move);
+    long nanos = System.nanoTime() - t0;
+    this.usedNanos += nanos;
+    if (MySearchStats.ENABLED) {
+      this.stats.ponderHits = ponderHit ? 1 : 0;
+      this.stats.ponderMisses = pondered && ponderHit == false ? 1 : 0;
+      report(event, nanos);
+    }
+    if (this.ponder) startPondering();
     return this.move;
   }
 
   /**
-   * ミニマックス探索のMAXノード処理（α-β法）。
-   * 自分（黒）の手番での最適手を探索する。
+   * 手を返した後の局面でポンダーを開始する。
+   * 置換表に記録された相手の最善手を予想の手とし、それを打った後の自分の局面を反復深化で探索する。
+   * 予想の手がなければ、相手の局面そのものを探索して置換表を埋める。
+   * 終局した局面、完全読みに切り替える局面、定石にある局面では探索しない。
+   * 探索は次の think か setBoard で止めるが、時間制御ありのときは次の手の割り当て時間の4倍で打ち切る。
+   */
+  void startPondering() {
+    var board = this.board.clone();
+    var opponent = getColor().flipped();
+    if (board.isEnd()) return;
+
+    int reply = MySearch.hint(this.table.probe(board.hash()));
+    var color = opponent;
+    if (reply != TranspositionTable.NO_MOVE && board.isLegalMove(BitBoard.moveOf(reply, opponent))) {
+      board.play(reply, opponent);
+      color = getColor();
+      if (board.isEnd() || this.book != null && this.book.lookup(board) >= 0) return;
+    } else {
+      reply = TranspositionTable.NO_MOVE;
+    }
+    int empties = board.count(NONE);
+    if (empties <= this.endgameEmpties) return;
+
+    long deadline = this.timeLimitSeconds > 0
+        ? System.nanoTime() + 4 * allocate(remainingNanos(), empties) : Long.MAX_VALUE;
+    var ponderer = ponderer();
+    if (ponderer == null) return;
+    if (this.ponderSearcher == null)
+      this.ponderSearcher = new MySearch(this.eval, this.table, this.ponderStop, this.depthLimit);
+
+    var searcher = this.ponderSearcher;
+    var searchColor = color;
+    searcher.newSearch();
+    searcher.deadline = deadline;
+    this.ponderMove = reply;
+    this.ponderStop.set(false);
+    try {
+      this.pondering = ponderer.submit(() -> {
+        Move prev = null;
+        for (int d = 1; d <= this.depthLimit && this.ponderStop.get() == false; d++) {
+          var m = searcher.searchDepth(board, searchColor, d, prev);
+          if (m == null) break;
+          prev = m;
+        }
+      });
+    } catch (RejectedExecutionException e) {
+      // 手を返す前に別のスレッドから閉じられた
+      this.pondering = null;
+    }
+  }
+
+  /**
+   * ポンダーの Executor を取得する（最初に呼ばれたときに作る）。
+   * @return Executor（閉じた後はnull）
    */
-  float maxSearch(Board board, float alpha, float beta, int depth) {
-    if (isTerminal(board, depth)) return this.eval.value(board);
+  synchronized ExecutorService ponderer() {
+    if (this.closed) return null;
+    if (this.ponderer == null) {
+      this.ponderer = Executors.newSingleThreadExecutor(r -> {
+        var thread = new Thread(r, toString() + "-ponder");
+        thread.setDaemon(true);
+        return thread;
+      });
+    }
+    return this.ponderer;
+  }
 
-    var moves = board.findLegalMoves(BLACK);
-    moves = order(moves);
+  /**
+   * 実行中のポンダーを止め、終了を待つ。ポンダーしていなければ何もしない。
+   * 呼んだスレッドが割り込まれていても、ポンダーの探索が終わるまで戻らない。
+   */
+  public void stopPondering() {
+    if (this.pondering == null) return;
+    this.ponderStop.set(true);
+    joinHelpers(List.of(this.pondering));
+    this.pondering = null;
+  }
 
-    if (depth == 0)
-      this.move = moves.get(0);
+  /**
+   * 直近の think の統計をゲームの統計に足し、リスナーと JFR に知らせる。
+   * @param event think の開始時に begin した JFR のイベント
+   * @param nanos think にかかった時間（ナノ秒）
+   */
+  void report(MySearchEvent event, long nanos) {
+    this.stats.moves = 1;
+    this.stats.nanos = nanos;
+    this.gameStats.add(this.stats);
+    if (this.listener != null) this.listener.searched(this.move, this.stats, this.gameStats);
 
-    for (var move: moves) {
-      var newBoard = board.placed(move);
-      float v = minSearch(newBoard, alpha, beta, depth + 1);
+    if (event.shouldCommit()) {
+      event.move = this.move.toString();
+      event.source = this.move.isPass() ? "pass" : this.stats.bookMoves > 0 ? "book"
+          : this.stats.solvedMoves > 0 ? "solver" : "search";
+      event.depth = (int) this.stats.depth;
+      event.nodes = this.stats.nodes;
+      event.evals = this.stats.evals;
+      event.cutoffs = this.stats.cutoffs;
+      event.firstCutoffs = this.stats.firstCutoffs;
+      event.probes = this.stats.probes;
+      event.hits = this.stats.hits;
+      event.remaining = remainingNanos();
+      event.commit();
+    }
+  }
 
-      if (v > alpha) {
-        alpha = v;
-        if (depth == 0)
-          this.move = move;
+  /**
+   * 反復深化で最善手を探す。
+   * 空きマスが endgameEmpties 以下なら、まず完全読みを行い、時間内に読み切れればその手を返す。
+   * 深さ1から順に探索し、前の深さの最善手を先に調べる。
+   * 割り当て時間の半分を過ぎたら次の深さには進まず、
+   * 探索中に打ち切り時刻を過ぎたらその深さの結果は捨てて前の深さの結果を返す。
+   * スレッドに割り込まれた場合（MyGame が時間切れにした場合）も同じように打ち切る。
+   * 補助スレッドは主スレッドが探索を終えるまで同じ局面を探索し続ける。
+   * @param board 盤面
+   * @param color 手番の色
+   * @param t0 think を開始した時刻（System.nanoTime() の値）
+   * @return 最後まで探索できた深さでの最善手
+   */
+  Move search(BitBoard board, Color color, long t0) {
+    this.nodes = 0;
+    this.depthReached = 0;
+    this.stats.clear();
+    this.table.newSearch();
+
+    boolean timed = this.timeLimitSeconds > 0;
+    long remaining = remainingNanos();
+    long budget = allocate(remaining, board.count(NONE));
+    long hardDeadline = t0 + Math.min(4 * budget, remaining / 2);
+
+    int empties = board.count(NONE);
+    if (empties <= this.endgameEmpties) {
+      var solver = solver();
+      solver.deadline = timed ? t0 + Math.min(2 * budget, remaining / 4) : Long.MAX_VALUE;
+      int score = solver.solveExact(board, color);
+      this.nodes += solver.nodes;
+      if (solver.aborted == false) {
+        this.depthReached = empties;
+        this.score = score;
+        this.stats.nodes = this.nodes;
+        this.stats.depth = empties;
+        this.stats.solvedMoves = 1;
+        return BitBoard.moveOf(solver.bestMove, color);
       }
+    }
 
-      if (alpha >= beta)
-        break;
+    // 完全読みを打ち切った場合も、反復深化には割り当て時間の半分を使えるようにする
+    long start = System.nanoTime();
+    for (var searcher : this.searchers) searcher.newSearch();
+    this.stop.set(false);
+    var futures = startHelpers(board, color, timed ? hardDeadline : Long.MAX_VALUE);
+
+    var main = this.searchers[0];
+    Move best = null;
+    try {
+      for (int d = 1; d <= this.depthLimit; d++) {
+        main.deadline = timed && d > 1 ? hardDeadline : Long.MAX_VALUE;
+        long t1 = System.nanoTime();
+        var m = main.searchDepth(board, color, d, best);
+        this.stats.iterationNanos[d] = System.nanoTime() - t1;
+        if (m == null) break;
+        best = m;
+        this.depthReached = d;
+        this.score = main.score;
+        if (timed && System.nanoTime() - start > budget / 2) break;
+      }
+    } finally {
+      this.stop.set(true);
+      joinHelpers(futures);
     }
+    // 割り込まれて深さ1の探索も打ち切った場合は、最初の合法手を返す
+    if (best == null) best = BitBoard.moveOf(Long.numberOfTrailingZeros(board.legalMask(color)), color);
 
-    return alpha;
+    for (var searcher : this.searchers) this.nodes += searcher.nodes;
+    if (MySearchStats.ENABLED) collect();
+    return best;
   }
 
   /**
-   * ミニマックス探索のMINノード処理（α-β法）。
-   * 相手（白）の手番での最適手を探索する。
+   * 全スレッドの探索の統計を直近の think の統計にまとめる。
    */
-  float minSearch(Board board, float alpha, float beta, int depth) {
-    if (isTerminal(board, depth)) return this.eval.value(board);
+  void collect() {
+    this.stats.nodes = this.nodes;
+    this.stats.depth = this.depthReached;
+    for (var searcher : this.searchers) {
+      this.stats.evals += searcher.evals;
+      this.stats.probes += searcher.probes;
+      this.stats.hits += searcher.hits;
+      for (int d = 0; d <= this.depthLimit; d++) {
+        this.stats.expanded += searcher.ordering.expanded[d];
+        this.stats.cutoffs += searcher.ordering.cutoffs[d];
+        this.stats.firstCutoffs += searcher.ordering.firstCutoffs[d];
+      }
+    }
+  }
 
-    var moves = board.findLegalMoves(WHITE);
-    moves = order(moves);
+  /**
+   * 補助スレッドの探索を開始する。
+   * 各スレッドは盤面の複製を使い、奇数番のスレッドは1つ深い深さから反復深化を始める。
+   * @param board 盤面
+   * @param color 手番の色
+   * @param deadline 探索を打ち切る時刻
+   * @return 各スレッドの完了を待つための Future のリスト
+   */
+  List<Future<?>> startHelpers(BitBoard board, Color color, long deadline) {
+    var futures = new ArrayList<Future<?>>();
+    if (this.searchers.length == 1) return futures;
+    var helpers = helpers();
+    if (helpers == null) return futures;
 
-    for (var move: moves) {
-      var newBoard = board.placed(move);
-      float v = maxSearch(newBoard, alpha, beta, depth + 1);
-      beta = Math.min(beta, v);
-      if (alpha >= beta) break;
+    for (int i = 1; i < this.searchers.length; i++) {
+      var searcher = this.searchers[i];
+      var helperBoard = board.clone();
+      int start = 1 + (i & 1);
+      try {
+        futures.add(helpers.submit(() -> {
+          searcher.deadline = deadline;
+          Move prev = null;
+          for (int d = start; d <= this.depthLimit && this.stop.get() == false; d++) {
+            var m = searcher.searchDepth(helperBoard, color, d, prev);
+            if (m == null) break;
+            prev = m;
+          }
+        }));
+      } catch (RejectedExecutionException e) {
+        // 探索中に別のスレッドから閉じられた
+        break;
+      }
     }
+    return futures;
+  }
 
-    return beta;
+  /**
+   * 補助スレッドの Executor を取得する（最初に呼ばれたときに作る）。
+   * @return Executor（閉じた後はnull）
+   */
+  synchronized ExecutorService helpers() {
+    if (this.closed) return null;
+    if (this.helpers == null) {
+      this.helpers = Executors.newFixedThreadPool(this.searchers.length - 1, r -> {
+        var thread = new Thread(r, toString() + "-helper");
+        thread.setDaemon(true);
+        return thread;
+      });
+    }
+    return this.helpers;
+  }
+
+  /**
+   * 実行中のポンダーに停止を指示し、補助スレッドとポンダーのスレッドを止める。
+   * 閉じた後の think は主スレッドだけで探索し、ポンダーもしない。
+   * ゲームが反則で終わって次の think も setBoard も来ないプレイヤーでも、ポンダーの探索はここで止まる。
+   * 時間切れで打ち切られた think が戻る前に別のスレッドから呼んでもよい
+   * （実行中の補助スレッドの探索は最後まで行い、スレッドはその後で終わる）。
+   */
+  public synchronized void close() {
+    this.closed = true;
+    this.ponderStop.set(true);
+    if (this.helpers != null) this.helpers.shutdown();
+    if (this.ponderer != null) this.ponderer.shutdown();
+  }
+
+  /**
+   * 補助スレッドの探索の終了を待つ。
+   * 探索は置換表や手の並び替えの表を共有するので、待っている間に割り込まれても最後まで待ち、
+   * 割り込まれたことは戻る前に割り込みフラグに戻す（停止フラグを立ててから呼ぶので、待つのは短い）。
+   */
+  void joinHelpers(List<Future<?>> futures) {
+    boolean interrupted = false;
+    try {
+      for (var future : futures) {
+        while (true) {
+          try {
+            future.get();
+            break;
+          } catch (InterruptedException e) {
+            interrupted = true;
+          } catch (ExecutionException e) {
+            throw new IllegalStateException("helper search failed", e.getCause());
+          }
+        }
+      }
+    } finally {
+      if (interrupted) Thread.currentThread().interrupt();
+    }
   }
 
   /**
-   * 探索を終了すべき状態かどうかを判定する。
-   * ゲーム終了状態か、または探索深さ制限に達した場合に終了する。
+   * このゲームの残り時間（ナノ秒）を取得する。余裕分の時間は除く。
+   * 対局から締め切りを渡されていれば、締め切りまでの時間も超えない。
    */
-  boolean isTerminal(Board board, int depth) {
-    return board.isEnd() || depth > this.depthLimit;
+  long remainingNanos() {
+    long remaining = (long) (this.timeLimitSeconds * 1e9) - this.usedNanos;
+    if (this.deadline != Long.MAX_VALUE) remaining = Math.min(remaining, this.deadline - System.nanoTime());
+    return Math.max(0, remaining - TIME_MARGIN_NANOS);
   }
 
   /**
-   * 手の順序をランダムに並び替える。
-   * 同じ評価値の手があった場合に毎回同じ手を選ばないようにするため。
+   * 1手に割り当てる時間（ナノ秒）を計算する。
+   * 残りの自分の手数を空きマス数の半分と見積もり、残り時間を均等に割り当てる。
+   * @param remaining 残り時間（ナノ秒）
+   * @param empties 空きマスの数
    */
-  List<Move> order(List<Move> moves) {
-    var shuffled = new ArrayList<Move>(moves);
-    Collections.shuffle(shuffled);
-    return shuffled;
+  static long allocate(long remaining, int empties) {
+    int moves = Math.max(1, (empties + 1) / 2);
+    return remaining / moves;
   }
 }
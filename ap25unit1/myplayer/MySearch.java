@@ -0,0 +1,270 @@
+package myplayer;
+
+import static ap25.Board.*;
+import static ap25.Color.*;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import ap25.*;
+
+/**
+ * ネガマックス法（PVS とアスピレーションウィンドウ）による探索を1スレッド分行うクラス。
+ * 盤面は手番側のまま探索し、評価値は常に手番側から見た値として扱う。
+ * 盤面、合法手バッファ、手の並び替え、ノード数などスレッドごとの状態を持ち、
+ * 置換表と停止フラグは同じプレイヤーの他の探索と共有する（Lazy SMP）。
+ */
+class MySearch {
+  /** 時間切れを確認するノード数の間隔（2のべき乗 - 1 のマスク） */
+  static final int CHECK_INTERVAL_MASK = 1023;
+  /** アスピレーションウィンドウを使い始める深さ */
+  static final int ASPIRATION_DEPTH = 3;
+  /** 前の深さの評価値の前後に取る窓の最初の幅 */
+  static final float ASPIRATION_WINDOW = 8;
+  /** 窓の幅がこの値を超えたら、外れた側の窓の限界をなくす */
+  static final float ASPIRATION_MAX = 256;
+
+  /** 盤面評価オブジェクト */
+  MyEval eval;
+  /** 置換表（他のスレッドと共有する） */
+  TranspositionTable table;
+  /** 探索全体の停止フラグ（他のスレッドと共有する） */
+  AtomicBoolean stop;
+  /** 探索の深さごとの合法手バッファ（探索中に再利用する） */
+  int[][] moveBuffers;
+  /** 手の並び替え（キラー手、ヒストリー、統計） */
+  MyMoveOrder ordering;
+  /** 探索したノード数 */
+  long nodes;
+  /** 評価関数を呼んだ回数（MySearchStats.ENABLED のときだけ数える） */
+  long evals;
+  /** 置換表を引いた回数（MySearchStats.ENABLED のときだけ数える） */
+  long probes;
+  /** 置換表にエントリがあった回数（MySearchStats.ENABLED のときだけ数える） */
+  long hits;
+  /** 反復深化で現在探索中の深さ */
+  int searchDepth;
+  /** 探索を打ち切る時刻（System.nanoTime() の値） */
+  long deadline = Long.MAX_VALUE;
+  /** 時間切れ、停止フラグ、割り込みのいずれかで探索を打ち切ったかどうか */
+  boolean aborted;
+  /** ルートで現在選択中の手 */
+  Move move;
+  /** 直近に最後まで探索できた深さでのルートの評価値（手番側から見た値） */
+  float score;
+  /** 反復深化の深さごとのルートの評価値（まだ求めていない深さは NaN） */
+  float[] scores;
+  /** false のときは幅0の窓とアスピレーションウィンドウを使わず、常に全幅の窓で探索する（比較用） */
+  boolean pvs = true;
+
+  /**
+   * コンストラクタ
+   * @param eval 盤面評価オブジェクト
+   * @param table 共有する置換表
+   * @param stop 共有する停止フラグ
+   * @param depthLimit 探索の深さ制限
+   */
+  MySearch(MyEval eval, TranspositionTable table, AtomicBoolean stop, int depthLimit) {
+    this.eval = eval;
+    this.table = table;
+    this.stop = stop;
+    this.moveBuffers = new int[depthLimit + 1][LENGTH];
+    this.ordering = new MyMoveOrder(depthLimit);
+    this.scores = new float[depthLimit + 1];
+    Arrays.fill(this.scores, Float.NaN);
+  }
+
+  /**
+   * 新しい局面の探索を始める前に呼ぶ。ノード数などの統計を 0 にし、手の並び替えの情報を新しくする。
+   */
+  void newSearch() {
+    this.nodes = this.evals = this.probes = this.hits = 0;
+    this.ordering.newSearch();
+    Arrays.fill(this.scores, Float.NaN);
+  }
+
+  /**
+   * 指定された深さで1回探索する。
+   * 前の深さの評価値があれば、その前後の狭い窓（アスピレーションウィンドウ）で探索し、
+   * 窓の外に出たら外れた側の窓を広げて探索し直す。
+   * @param board 盤面（探索中は play/undo で更新し、終了時には元に戻っている）
+   * @param color 手番の色
+   * @param depth 探索の深さ
+   * @param previous 前の深さでの最善手（先に調べる。なければnull）
+   * @return 最後まで探索できた場合の最善手（打ち切った場合はnull）
+   */
+  Move searchDepth(BitBoard board, Color color, int depth, Move previous) {
+    this.searchDepth = depth;
+    this.aborted = false;
+    this.move = previous;
+    this.eval.prepare(board);
+
+    long nodes0 = this.nodes;
+    float delta = ASPIRATION_WINDOW;
+    float center = depth >= 2 ? this.scores[depth - 2] : Float.NaN;
+    boolean aspiration = this.pvs && depth >= ASPIRATION_DEPTH && Float.isNaN(center) == false;
+    float alpha = aspiration ? center - delta : Float.NEGATIVE_INFINITY;
+    float beta = aspiration ? center + delta : Float.POSITIVE_INFINITY;
+    while (true) {
+      float v = search(board, color, alpha, beta, 0);
+      if (this.aborted) break;
+      if (v > alpha && v < beta) {
+        this.score = v;
+        this.scores[depth] = v;
+        break;
+      }
+      delta *= 4;
+      if (v <= alpha) alpha = delta > ASPIRATION_MAX ? Float.NEGATIVE_INFINITY : center - delta;
+      else beta = delta > ASPIRATION_MAX ? Float.POSITIVE_INFINITY : center + delta;
+    }
+    if (MySearchStats.ENABLED) this.ordering.nodes[depth] += this.nodes - nodes0;
+
+    return this.aborted ? null : this.move;
+  }
+
+  /**
+   * ネガマックス法による主変化探索（PVS）。
+   * 手番側から見た評価値を返す。最初の手は窓 (alpha, beta) で探索し、
+   * 2番目以降の手は alpha を超えるかどうかだけを幅0の窓で調べ、超えた場合だけ元の窓で探索し直す。
+   * 盤面は play/undo で直接更新するため、ノードごとのヒープ確保は行わない。
+   * @param board 盤面
+   * @param color 手番の色
+   * @param alpha 窓の下限
+   * @param beta 窓の上限
+   * @param depth ルートからの深さ
+   * @return 評価値（窓の外に出た場合は真の値の上限または下限）
+   */
+  float search(BitBoard board, Color color, float alpha, float beta, int depth) {
+    if (isTerminal(board, depth)) return evaluate(board, color);
+    if (isTimeUp()) return 0;
+
+    long key = board.hash();
+    int remaining = this.searchDepth + 1 - depth;
+    long entry = this.table.probe(key);
+    if (MySearchStats.ENABLED) {
+      this.probes++;
+      if (entry != 0) this.hits++;
+    }
+    if (depth > 0 && isCutoff(entry, remaining, alpha, beta))
+      return TranspositionTable.value(entry);
+
+    var moves = this.moveBuffers[depth];
+    int n = board.findLegalIndexes(color, moves);
+    this.ordering.order(board, color, moves, n, hint(entry), depth, remaining);
+    this.ordering.expand(this.searchDepth);
+
+    if (depth == 0) {
+      if (this.move != null) first(moves, n, this.move.getIndex());
+      this.move = BitBoard.moveOf(moves[0], color);
+    }
+
+    var opponent = color.flipped();
+    float alpha0 = alpha;
+    float bestValue = Float.NEGATIVE_INFINITY;
+    int best = moves[0];
+    for (int i = 0; i < n; i++) {
+      board.play(moves[i], color);
+      float v;
+      if (i == 0 || this.pvs == false) {
+        v = -search(board, opponent, -beta, -alpha, depth + 1);
+      } else {
+        // alpha と、alpha の次に大きい float の間には値がないので、幅0の窓として使える
+        v = -search(board, opponent, -Math.nextUp(alpha), -alpha, depth + 1);
+        if (v > alpha && v < beta && this.aborted == false)
+          v = -search(board, opponent, -beta, -alpha, depth + 1);
+      }
+      board.undo();
+      if (this.aborted) return 0;
+
+      if (v > bestValue) {
+        bestValue = v;
+        best = moves[i];
+        if (depth == 0)
+          this.move = BitBoard.moveOf(moves[i], color);
+      }
+      if (v > alpha) alpha = v;
+
+      if (alpha >= beta) {
+        this.ordering.cutoff(color, moves[i], i, depth, remaining, this.searchDepth);
+        break;
+      }
+    }
+
+    store(key, remaining, alpha0, beta, bestValue, best);
+    return bestValue;
+  }
+
+  /**
+   * 末端の盤面を手番側から見て評価する。
+   */
+  float evaluate(BitBoard board, Color color) {
+    if (MySearchStats.ENABLED) this.evals++;
+    float v = this.eval.value(board);
+    return color == BLACK ? v : -v;
+  }
+
+  /**
+   * 探索ノード数を数え、一定間隔で打ち切り時刻と停止フラグ、スレッドへの割り込みを確認する。
+   * 割り込まれた場合は停止フラグも立て、同じ think の他のスレッドの探索も止める。
+   * @return 探索を打ち切るべき場合true
+   */
+  boolean isTimeUp() {
+    if ((++this.nodes & CHECK_INTERVAL_MASK) == 0) {
+      if (Thread.currentThread().isInterrupted()) this.stop.set(true);
+      if (this.stop.get() || System.nanoTime() > this.deadline) this.aborted = true;
+    }
+    return this.aborted;
+  }
+
+  /**
+   * 置換表のエントリだけで探索を打ち切れるかどうかを判定する。
+   * 十分な深さで探索済みで、その値が正確な値か、窓の外にある限界値の場合に打ち切れる。
+   */
+  boolean isCutoff(long entry, int remaining, float alpha, float beta) {
+    if (entry == 0 || TranspositionTable.depth(entry) < remaining) return false;
+    float v = TranspositionTable.value(entry);
+    switch (TranspositionTable.bound(entry)) {
+    case TranspositionTable.EXACT: return true;
+    case TranspositionTable.LOWER: return v >= beta;
+    default: return v <= alpha;
+    }
+  }
+
+  /**
+   * 探索結果を置換表に記録する。
+   * 探索開始時の窓 (alpha, beta) と結果の値から評価値の種類を決める。
+   */
+  void store(long key, int remaining, float alpha, float beta, float v, int best) {
+    int bound = v <= alpha ? TranspositionTable.UPPER
+        : v >= beta ? TranspositionTable.LOWER : TranspositionTable.EXACT;
+    this.table.store(key, remaining, bound, v, best);
+  }
+
+  /**
+   * 探索を終了すべき状態かどうかを判定する。
+   * ゲーム終了状態か、または探索深さ制限に達した場合に終了する。
+   */
+  boolean isTerminal(Board board, int depth) {
+    return board.isEnd() || depth > this.searchDepth;
+  }
+
+  /**
+   * 置換表のエントリに記録された最善手を返す（エントリがなければ TranspositionTable.NO_MOVE）。
+   */
+  static int hint(long entry) {
+    return entry == 0 ? TranspositionTable.NO_MOVE : TranspositionTable.move(entry);
+  }
+
+  /**
+   * 指定された手が含まれていれば先頭に移す。
+   */
+  static void first(int[] moves, int n, int best) {
+    for (int i = 1; i < n; i++) {
+      if (moves[i] == best) {
+        moves[i] = moves[0];
+        moves[0] = best;
+        break;
+      }
+    }
+  }
+}
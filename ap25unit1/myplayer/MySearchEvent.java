@@ -0,0 +1,42 @@
+package myplayer;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * MyPlayer の think 1回分を記録する JFR のイベント
+ * JFR で記録していないときは commit しても何もしない。
+ * 例：java -XX:StartFlightRecording=filename=search.jfr ... の後、jfr print --events myplayer.Search search.jfr
+ */
+@Name("myplayer.Search")
+@Label("MyPlayer Search")
+@Category("MyPlayer")
+@Description("One call of MyPlayer.think")
+class MySearchEvent extends Event {
+  @Label("Move")
+  String move;
+  @Label("Source")
+  @Description("search, book, solver or pass")
+  String source;
+  @Label("Depth")
+  int depth;
+  @Label("Nodes")
+  long nodes;
+  @Label("Evaluations")
+  long evals;
+  @Label("Cutoffs")
+  long cutoffs;
+  @Label("First Move Cutoffs")
+  long firstCutoffs;
+  @Label("TT Probes")
+  long probes;
+  @Label("TT Hits")
+  long hits;
+  @Label("Remaining Time")
+  @Timespan(Timespan.NANOSECONDS)
+  long remaining;
+}
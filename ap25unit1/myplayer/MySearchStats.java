@@ -0,0 +1,139 @@
+package myplayer;
+
+import static ap25.Color.*;
+
+import java.util.Arrays;
+
+import ap25.*;
+
+/**
+ * MyPlayer の探索の統計
+ * 1手分（think 1回）の値と、1ゲーム分の合計の両方に使う。
+ * 探索中の数え上げは ENABLED が false なら行わない。ENABLED は static final なので、
+ * -Dmyplayer.stats=false で起動すると JIT が数え上げのコードを取り除き、探索の速度に影響しない。
+ */
+public class MySearchStats {
+  /** 探索中に統計を数えるかどうか（システムプロパティ myplayer.stats が false なら数えない） */
+  static final boolean ENABLED = Boolean.parseBoolean(System.getProperty("myplayer.stats", "true"));
+
+  /** 手の数（1手分の統計では1） */
+  public int moves;
+  /** 定石から選んだ手の数 */
+  public int bookMoves;
+  /** 完全読みで選んだ手の数 */
+  public int solvedMoves;
+  /** ポンダーで予想した相手の手が当たった回数 */
+  public int ponderHits;
+  /** ポンダーで予想した相手の手が外れた回数 */
+  public int ponderMisses;
+  /** 探索したノード数（全スレッドと完全読みの合計） */
+  public long nodes;
+  /** 評価関数を呼んだ回数 */
+  public long evals;
+  /** 手を展開したノードの数 */
+  public long expanded;
+  /** カットを起こしたノードの数 */
+  public long cutoffs;
+  /** 最初の手でカットを起こしたノードの数 */
+  public long firstCutoffs;
+  /** 置換表を引いた回数 */
+  public long probes;
+  /** 置換表にエントリがあった回数 */
+  public long hits;
+  /** 反復深化で最後まで探索できた深さ（ゲームの統計では手ごとの合計） */
+  public long depth;
+  /** 思考時間（ナノ秒） */
+  public long nanos;
+  /** 反復深化の深さごとの、主スレッドがその深さの探索に使った時間（ナノ秒） */
+  public long[] iterationNanos;
+
+  /**
+   * コンストラクタ
+   * @param maxDepth 記録する反復深化の深さの上限
+   */
+  public MySearchStats(int maxDepth) {
+    this.iterationNanos = new long[maxDepth + 1];
+  }
+
+  /**
+   * 他の統計を足し合わせる
+   */
+  public void add(MySearchStats other) {
+    this.moves += other.moves;
+    this.bookMoves += other.bookMoves;
+    this.solvedMoves += other.solvedMoves;
+    this.ponderHits += other.ponderHits;
+    this.ponderMisses += other.ponderMisses;
+    this.nodes += other.nodes;
+    this.evals += other.evals;
+    this.expanded += other.expanded;
+    this.cutoffs += other.cutoffs;
+    this.firstCutoffs += other.firstCutoffs;
+    this.probes += other.probes;
+    this.hits += other.hits;
+    this.depth += other.depth;
+    this.nanos += other.nanos;
+    int n = Math.min(this.iterationNanos.length, other.iterationNanos.length);
+    for (int d = 0; d < n; d++) this.iterationNanos[d] += other.iterationNanos[d];
+  }
+
+  /**
+   * 値をすべて0にする
+   */
+  public void clear() {
+    this.moves = this.bookMoves = this.solvedMoves = this.ponderHits = this.ponderMisses = 0;
+    this.nodes = this.evals = this.expanded = this.cutoffs = this.firstCutoffs = 0;
+    this.probes = this.hits = this.depth = this.nanos = 0;
+    Arrays.fill(this.iterationNanos, 0);
+  }
+
+  /** 1秒あたりのノード数 */
+  public double nodesPerSecond() { return this.nodes * 1e9 / Math.max(1, this.nanos); }
+  /** 展開したノードのうちカットを起こしたものの割合 */
+  public double cutoffRate() { return (double) this.cutoffs / Math.max(1, this.expanded); }
+  /** カットのうち最初の手で起きたものの割合 */
+  public double firstCutoffRate() { return (double) this.firstCutoffs / Math.max(1, this.cutoffs); }
+  /** 置換表を引いてエントリがあった割合 */
+  public double hitRate() { return (double) this.hits / Math.max(1, this.probes); }
+  /** 1手あたりの平均の深さ */
+  public double averageDepth() { return (double) this.depth / Math.max(1, this.moves); }
+
+  public String toString() {
+    return String.format("moves %d (book %d, solved %d)  depth %.1f  nodes %d  %.2f Mnps  evals %d"
+        + "  cut %.1f%%  first %.1f%%  tt %.1f%%  ponder %d/%d  %.3fs",
+        this.moves, this.bookMoves, this.solvedMoves, averageDepth(), this.nodes,
+        nodesPerSecond() / 1e6, this.evals, 100 * cutoffRate(), 100 * firstCutoffRate(),
+        100 * hitRate(), this.ponderHits, this.ponderHits + this.ponderMisses, this.nanos / 1e9);
+  }
+
+  /**
+   * MyPlayer とランダムプレイヤーを1局対戦させ、手ごとの統計とゲームの合計を表示する
+   * 引数：MyPlayer の探索の深さ（デフォルト 8）
+   */
+  public static void main(String args[]) {
+    int depth = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+    var player = new MyPlayer(MyPlayer.MY_NAME, BLACK, depth);
+    player.setListener((move, stats, game) -> System.out.printf("%-4s %s\n", move, stats));
+    var game = new MyGame(new BitBoard(), player, new RandomPlayer(WHITE));
+    var end = game.runOneGame();
+    System.out.println("game " + player.gameStats);
+    System.out.println("score " + end.score());
+    var times = new StringBuilder("iteration ms:");
+    for (int d = 1; d < player.gameStats.iterationNanos.length; d++)
+      if (player.gameStats.iterationNanos[d] > 0)
+        times.append(String.format(" %d=%.1f", d, player.gameStats.iterationNanos[d] / 1e6));
+    System.out.println(times);
+  }
+
+  /**
+   * think が手を決めるたびに統計を受け取るリスナー
+   */
+  public interface Listener {
+    /**
+     * @param move 選んだ手
+     * @param stats その手の統計
+     * @param game このゲームのここまでの統計の合計
+     */
+    void searched(Move move, MySearchStats stats, MySearchStats game);
+  }
+}
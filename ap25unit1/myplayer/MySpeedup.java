@@ -0,0 +1,55 @@
+package myplayer;
+
+import static ap25.Color.*;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+ * MyPlayer の並列探索（Lazy SMP）の速度向上を測るプログラム
+ * ランダムに作った中盤の局面を、スレッド数を変えて同じ深さまで探索し、
+ * 1スレッドのときとの所要時間の比を表示する。
+ * 引数：探索の深さ、局面数、スレッド数の上限、乱数の種
+ */
+public class MySpeedup {
+  public static void main(String args[]) {
+    var depth = args.length > 0 ? Integer.parseInt(args[0]) : 9;
+    var count = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+    var maxThreads = args.length > 2 ? Integer.parseInt(args[2]) : 16;
+    var rand = new Random(args.length > 3 ? Long.parseLong(args[3]) : 0);
+
+    var positions = new ArrayList<BitBoard>();
+    for (int i = 0; i < count; i++)
+      positions.add(MyEndgameSolver.randomPosition(rand, 24));
+
+    // JIT コンパイルを済ませるための予備の探索
+    for (var position : positions) {
+      var player = new MyPlayer(MyPlayer.MY_NAME, BLACK, new MyEval(), Math.max(1, depth - 2));
+      player.setEndgameEmpties(0);
+      player.search(position.clone(), position.getTurn(), System.nanoTime());
+    }
+
+    System.out.printf("depth %d, %d positions, %d cores\n",
+        depth, count, Runtime.getRuntime().availableProcessors());
+    double base = 0;
+    for (int threads = 1; threads <= maxThreads; threads *= 2) {
+      long nanos = 0, nodes = 0;
+      for (var position : positions) {
+        var player = new MyPlayer(MyPlayer.MY_NAME, BLACK, new MyEval(), depth,
+            MyPlayer.DEFAULT_TABLE_MEGABYTES, 0, threads);
+        player.setEndgameEmpties(0);
+        player.setSeed(0);
+        var board = position.clone();
+
+        long t0 = System.nanoTime();
+        player.search(board, position.getTurn(), t0);
+        nanos += System.nanoTime() - t0;
+        nodes += player.nodes;
+        player.close();
+      }
+      if (threads == 1) base = nanos;
+      System.out.printf("threads %2d  %8.3fs  speedup %5.2f  nodes %11d  %6.2f Mnps\n",
+          threads, nanos / 1e9, base / nanos, nodes, nodes * 1e3 / nanos);
+    }
+  }
+}
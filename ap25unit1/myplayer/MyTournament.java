@@ -0,0 +1,231 @@
+package myplayer;
+
+import static ap25.Color.*;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import ap25.*;
+
+/**
+ * 複数のゲームを並列に実行して勝敗を集計する対戦ランナー
+ * ゲームごとに盤面・手の履歴・思考時間を持つ MyGame と、新しいプレイヤーを作って実行するため、
+ * ゲーム同士で状態を共有しない。
+ * 各ゲームのプレイヤーはゲーム番号から決まる乱数の種で作るので、
+ * 決定的なプレイヤー同士なら並列実行しても逐次実行と同じ結果になる。
+ * AutoCloseable なプレイヤーはゲームが終わったら閉じる。
+ */
+public class MyTournament {
+  /**
+   * 色と乱数の種からプレイヤーを作るファクトリ
+   */
+  public interface PlayerFactory {
+    Player create(Color color, long seed);
+  }
+
+  public static void main(String args[]) throws IOException {
+    // 引数：対戦数、スレッド数、乱数の種、棋譜ファイル（省略可）
+    var gameCount = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+    var threads = args.length > 1 ? Integer.parseInt(args[1])
+        : Runtime.getRuntime().availableProcessors();
+    var seed = args.length > 2 ? Long.parseLong(args[2]) : 0L;
+
+    PlayerFactory first = (color, s) -> {
+      var player = new MyPlayer(MyPlayer.MY_NAME, color, 4);
+      player.setSeed(s);
+      return player;
+    };
+    PlayerFactory second = (color, s) -> new RandomPlayer(color, s);
+
+    var tournament = new MyTournament(new BitBoard(), first, second, gameCount, seed);
+    var recorder = args.length > 3 ? new MyGameRecordWriter(Path.of(args[3])) : null;
+    var executor = Executors.newFixedThreadPool(threads);
+    try {
+      tournament.record(recorder).run(executor).print();
+    } finally {
+      executor.shutdown();
+      if (recorder != null) recorder.close();
+    }
+  }
+
+  /**
+   * 対戦結果
+   * 勝敗数と、各ゲームの先手側プレイヤー（first）から見たスコアを保持する
+   */
+  public static class Result {
+    /** firstの勝利数 */
+    public final int firstPlayerWins;
+    /** secondの勝利数 */
+    public final int secondPlayerWins;
+    /** 引き分けの数 */
+    public final int draws;
+    /** ゲーム番号順の、firstから見たスコア */
+    final int[] scores;
+
+    Result(int firstPlayerWins, int secondPlayerWins, int draws, int[] scores) {
+      this.firstPlayerWins = firstPlayerWins;
+      this.secondPlayerWins = secondPlayerWins;
+      this.draws = draws;
+      this.scores = scores;
+    }
+
+    /** ゲーム番号順の、firstから見たスコアを取得する */
+    public int[] getScores() { return this.scores.clone(); }
+
+    public boolean equals(Object otherObj) {
+      if (otherObj instanceof Result) {
+        var other = (Result) otherObj;
+        return this.firstPlayerWins == other.firstPlayerWins
+            && this.secondPlayerWins == other.secondPlayerWins
+            && this.draws == other.draws
+            && Arrays.equals(this.scores, other.scores);
+      }
+      return false;
+    }
+
+    public int hashCode() {
+      return Arrays.hashCode(this.scores);
+    }
+
+    /** MyGame.play と同じ形式で結果を表示する */
+    public void print() {
+      var gameCount = this.scores.length;
+      System.out.printf("\n=== 対戦結果 ===\n");
+      System.out.printf("総対戦数: %d\n", gameCount);
+      System.out.printf("先手の勝利: %d (%.1f%%)\n", firstPlayerWins, (float)firstPlayerWins/gameCount*100);
+      System.out.printf("後手の勝利: %d (%.1f%%)\n", secondPlayerWins, (float)secondPlayerWins/gameCount*100);
+      System.out.printf("引き分け: %d (%.1f%%)\n", draws, (float)draws/gameCount*100);
+    }
+  }
+
+  /** 初期盤面 */
+  Board board;
+  /** 前半戦で黒を持つプレイヤーのファクトリ */
+  PlayerFactory first;
+  /** 前半戦で白を持つプレイヤーのファクトリ */
+  PlayerFactory second;
+  /** 対戦数（前半と後半で先手後手を交代する） */
+  int gameCount;
+  /** 乱数の種 */
+  long seed;
+  /** 各ゲームの結果を表示するかどうか */
+  boolean verbose = true;
+  /** 棋譜の書き込み先（null なら書き込まない） */
+  MyGameRecordWriter recorder;
+
+  /**
+   * コンストラクタ
+   */
+  public MyTournament(Board board, PlayerFactory first, PlayerFactory second,
+      int gameCount, long seed) {
+    this.board = board.clone();
+    this.first = first;
+    this.second = second;
+    this.gameCount = gameCount;
+    this.seed = seed;
+  }
+
+  /**
+   * 各ゲームの結果の表示を切り替える
+   */
+  public MyTournament verbose(boolean verbose) {
+    this.verbose = verbose;
+    return this;
+  }
+
+  /**
+   * 各ゲームの棋譜を書き込む先を設定する（null なら書き込まない）
+   */
+  public MyTournament record(MyGameRecordWriter recorder) {
+    this.recorder = recorder;
+    return this;
+  }
+
+  /**
+   * 呼び出したスレッドで全ゲームを順に実行する
+   */
+  public Result runSequential() {
+    return run(Runnable::run);
+  }
+
+  /**
+   * 全ゲームを指定された Executor で実行し、すべて終わるまで待って結果を返す
+   * @param executor ゲームを実行する Executor
+   */
+  public Result run(Executor executor) {
+    var scores = new int[this.gameCount];
+    var firstPlayerWins = new AtomicInteger();
+    var secondPlayerWins = new AtomicInteger();
+    var draws = new AtomicInteger();
+
+    var futures = new ArrayList<CompletableFuture<Void>>();
+    for (int i = 0; i < this.gameCount; i++) {
+      final int index = i;
+      futures.add(CompletableFuture.runAsync(() -> {
+        var score = playGame(index);
+        scores[index] = score;
+        if (score == 0) draws.incrementAndGet();
+        else if (score > 0) firstPlayerWins.incrementAndGet();
+        else secondPlayerWins.incrementAndGet();
+      }, executor));
+    }
+    CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).join();
+
+    return new Result(firstPlayerWins.get(), secondPlayerWins.get(), draws.get(), scores);
+  }
+
+  /**
+   * 指定された番号のゲームを新しいプレイヤーで実行する
+   * 前半は first が黒、後半は second が黒を持つ
+   * @param index ゲーム番号（0から）
+   * @return first から見たスコア（正なら first の勝ち）
+   */
+  int playGame(int index) {
+    var swapped = index >= this.gameCount / 2;
+    var blackSeed = this.seed + 2L * index;
+    var black = (swapped ? this.second : this.first).create(BLACK, blackSeed);
+    var white = (swapped ? this.first : this.second).create(WHITE, blackSeed + 1);
+
+    var game = new MyGame(this.board, black, white);
+    Board end;
+    try {
+      end = game.runOneGame();
+    } finally {
+      close(black);
+      close(white);
+    }
+    if (this.verbose)
+      System.out.printf("Game %d: %s\n", index + 1, game.resultString(end, game.moves));
+    if (this.recorder != null) {
+      try {
+        this.recorder.write(game, end);
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+
+    var score = end.winner() == NONE ? 0 : end.score();
+    return swapped ? -score : score;
+  }
+
+  /**
+   * プレイヤーが AutoCloseable なら閉じる（ゲームごとに作ったプレイヤーのスレッドなどを止める）
+   */
+  static void close(Player player) {
+    if (player instanceof AutoCloseable == false) return;
+    try {
+      ((AutoCloseable) player).close();
+    } catch (RuntimeException e) {
+      throw e;
+    } catch (Exception e) {
+      throw new IllegalStateException("failed to close " + player, e);
+    }
+  }
+}
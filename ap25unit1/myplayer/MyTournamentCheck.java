@@ -0,0 +1,56 @@
+package myplayer;
+
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+
+/**
+ * MyTournament の並列実行が逐次実行と同じ結果になることを確かめる検査ツール
+ * 同じ乱数の種で、MyTournament.main と同じ MyPlayer（深さ4、1スレッド）と RandomPlayer の対戦を
+ * runSequential() と run(プール) で実行し、Result.equals で比べる（勝敗数と、ゲーム番号順の全スコア）。
+ * 一致しなければ両方のスコアを表示して終了コード1で終わる。
+ *
+ * 引数：
+ *   -games n  対戦数（デフォルト 40）
+ *   -threads n  並列実行のスレッド数（デフォルト プロセッサ数。1 でも並列実行の経路を通る）
+ *   -seed n  乱数の種（デフォルト 0）
+ */
+public class MyTournamentCheck {
+  public static void main(String args[]) {
+    var games = 40;
+    var threads = Runtime.getRuntime().availableProcessors();
+    var seed = 0L;
+    for (int i = 0; i + 1 < args.length; i += 2) {
+      switch (args[i]) {
+      case "-games": games = Integer.parseInt(args[i + 1]); break;
+      case "-threads": threads = Integer.parseInt(args[i + 1]); break;
+      case "-seed": seed = Long.parseLong(args[i + 1]); break;
+      default: throw new IllegalArgumentException("unknown option: " + args[i]);
+      }
+    }
+
+    MyTournament.PlayerFactory first = (color, s) -> {
+      var player = new MyPlayer(MyPlayer.MY_NAME, color, 4);
+      player.setSeed(s);
+      return player;
+    };
+    MyTournament.PlayerFactory second = (color, s) -> new RandomPlayer(color, s);
+
+    var sequential = new MyTournament(new BitBoard(), first, second, games, seed).verbose(false).runSequential();
+    var executor = Executors.newFixedThreadPool(threads);
+    MyTournament.Result parallel;
+    try {
+      parallel = new MyTournament(new BitBoard(), first, second, games, seed).verbose(false).run(executor);
+    } finally {
+      executor.shutdown();
+    }
+
+    var ok = sequential.equals(parallel);
+    System.out.printf("%d games, %d threads, seed %d: %d-%d-%d: %s\n", games, threads, seed,
+        sequential.firstPlayerWins, sequential.secondPlayerWins, sequential.draws, ok ? "ok" : "NG");
+    if (ok == false) {
+      System.out.println("sequential: " + Arrays.toString(sequential.getScores()));
+      System.out.println("parallel:   " + Arrays.toString(parallel.getScores()));
+      System.exit(1);
+    }
+  }
+}
@@ -0,0 +1,360 @@
+package myplayer;
+
+import static ap25.Board.*;
+import static ap25.Color.*;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+import ap25.*;
+
+/**
+ * MyPatternEval の重みを自己対戦から学習するプログラム
+ * 1. MyPlayer 同士の自己対戦を並列に行い、対局中の局面と結果をデータファイルに書き出す。
+ *    空きマスが solve 以下の局面は完全読みの値を、それ以外は終局時のスコアを正解とする（黒から見た石差）。
+ * 2. データファイルを先頭から読みながらミニバッチの確率的勾配降下法で重みを学習する。
+ *    データはシャッフル用のバッファの分しかメモリに置かないので、ファイルの大きさに制限はない。
+ *    各局面は黒白を入れ替えた局面（正解の符号を反転）としても学習する。
+ * 3. 学習した重みを重みファイルに書き出す。MyPlayer は起動時にこのファイルを読み込む。
+ *
+ * 引数：
+ *   -games n  自己対戦の数（デフォルト 1000）
+ *   -threads n  自己対戦のスレッド数（デフォルト CPU 数）
+ *   -depth n  自己対戦での探索の深さ（デフォルト 4）
+ *   -random n  各対局の最初にランダムに打つ手数（デフォルト 8）
+ *   -solve n  完全読みで正解を付ける空きマス数（デフォルト 12）
+ *   -epochs n  学習の反復回数（デフォルト 10）
+ *   -batch n  ミニバッチの大きさ（デフォルト 256）
+ *   -rate r  学習率（デフォルト 0.5）
+ *   -seed n  乱数の種（デフォルト 0）
+ *   -data ファイル  データファイル（デフォルト selfplay.dat）
+ *   -out ファイル  書き出す重みファイル（デフォルト weights.bin）
+ *   -append  既存のデータファイルに追記する
+ *   -train-only  自己対戦を行わず、既存のデータファイルで学習する
+ */
+public class MyTrainer {
+  /** データファイルの1局面の大きさ（黒・白・障害物のマスク、正解の値） */
+  static final int RECORD_BYTES = 3 * Long.BYTES + Float.BYTES;
+  /** シャッフル用のバッファの局面数 */
+  static final int SHUFFLE_RECORDS = 1 << 16;
+  /** この数の局面ごとに1局面を検証用に取り分ける */
+  static final int VALIDATION_INTERVAL = 10;
+  /** パターンの番号の数の最大値（勾配を溜めた位置を1つの整数にするときに使う） */
+  static final int MAX_SIZE = Arrays.stream(MyPatternEval.SIZES).max().getAsInt();
+
+  int games = 1000;
+  int threads = Runtime.getRuntime().availableProcessors();
+  int depth = 4;
+  int randomPlies = 8;
+  int solveEmpties = 12;
+  int epochs = 10;
+  int batchSize = 256;
+  float rate = 0.5f;
+  long seed = 0;
+
+  public static void main(String args[]) throws IOException {
+    var trainer = new MyTrainer();
+    var data = Path.of("selfplay.dat");
+    var out = Path.of(MyPatternEval.DEFAULT_WEIGHTS_FILE);
+    var append = false;
+    var generate = true;
+    for (int i = 0; i < args.length; i++) {
+      switch (args[i]) {
+      case "-games": trainer.games = Integer.parseInt(args[++i]); break;
+      case "-threads": trainer.threads = Integer.parseInt(args[++i]); break;
+      case "-depth": trainer.depth = Integer.parseInt(args[++i]); break;
+      case "-random": trainer.randomPlies = Integer.parseInt(args[++i]); break;
+      case "-solve": trainer.solveEmpties = Integer.parseInt(args[++i]); break;
+      case "-epochs": trainer.epochs = Integer.parseInt(args[++i]); break;
+      case "-batch": trainer.batchSize = Integer.parseInt(args[++i]); break;
+      case "-rate": trainer.rate = Float.parseFloat(args[++i]); break;
+      case "-seed": trainer.seed = Long.parseLong(args[++i]); break;
+      case "-data": data = Path.of(args[++i]); break;
+      case "-out": out = Path.of(args[++i]); break;
+      case "-append": append = true; break;
+      case "-train-only": generate = false; break;
+      default: throw new IllegalArgumentException("unknown option: " + args[i]);
+      }
+    }
+
+    if (generate) {
+      var executor = Executors.newFixedThreadPool(trainer.threads);
+      try {
+        long t0 = System.nanoTime();
+        long records = trainer.generate(data, append, executor);
+        System.out.printf("generated %d games, %d positions in %.1fs -> %s\n",
+            trainer.games, records, (System.nanoTime() - t0) / 1e9, data);
+      } finally {
+        executor.shutdown();
+      }
+    }
+
+    var eval = trainer.train(data);
+    eval.save(out);
+    System.out.println("saved " + out);
+  }
+
+  /**
+   * 自己対戦を行い、局面と正解をデータファイルに書き出す
+   * 対局は executor で並列に行い、ファイルには対局の番号順に書き出す
+   * @return 書き出した局面の数
+   */
+  long generate(Path data, boolean append, Executor executor) throws IOException {
+    var futures = new ArrayList<CompletableFuture<byte[]>>();
+    for (int i = 0; i < this.games; i++) {
+      final int index = i;
+      futures.add(CompletableFuture.supplyAsync(() -> playGame(index), executor));
+    }
+
+    var options = append
+        ? new OpenOption[] { StandardOpenOption.CREATE, StandardOpenOption.APPEND }
+        : new OpenOption[0];
+    long bytes = 0;
+    try (var out = new BufferedOutputStream(Files.newOutputStream(data, options))) {
+      for (var future : futures) {
+        var records = future.join();
+        out.write(records);
+        bytes += records.length;
+      }
+    }
+    return bytes / RECORD_BYTES;
+  }
+
+  /**
+   * 指定された番号の自己対戦を行い、対局中の局面と正解を返す
+   * 最初の randomPlies 手はランダムに打ち、その後は MyPlayer 同士で終局まで打つ
+   * @return データファイルの形式で並べた局面（反則で終わった対局では空）
+   */
+  byte[] playGame(int index) {
+    var rand = new Random(this.seed * 1_000_003L + index);
+    var start = new BitBoard();
+    var buf = new int[LENGTH];
+    for (int p = 0; p < this.randomPlies && start.isEnd() == false; p++) {
+      var turn = start.getTurn();
+      int n = start.findLegalIndexes(turn, buf);
+      start = start.placed(new Move(buf[rand.nextInt(n)], turn));
+    }
+
+    var black = new MyPlayer(MyPlayer.MY_NAME, BLACK, this.depth);
+    var white = new MyPlayer(MyPlayer.MY_NAME, WHITE, this.depth);
+    black.setSeed(rand.nextLong());
+    white.setSeed(rand.nextLong());
+    var game = new MyGame(start, black, white);
+    int score = game.runOneGame().score();
+    // 反則（時間切れ・反則手・エラー）で終わった対局は、スコアが正解にならず最後の手も打てないので使わない
+    var moves = game.moves;
+    if (moves.isEmpty() == false && moves.get(moves.size() - 1).isLegal() == false) return new byte[0];
+
+    var solver = new MyEndgameSolver();
+    var bytes = new ByteArrayOutputStream();
+    try (var out = new DataOutputStream(bytes)) {
+      var board = start;
+      for (var move : moves) {
+        if (board.isEnd()) break;
+        float label = score;
+        if (board.count(NONE) <= this.solveEmpties) {
+          var turn = board.getTurn();
+          int v = solver.solveExact(board, turn);
+          label = turn == BLACK ? v : -v;
+        }
+        out.writeLong(board.black);
+        out.writeLong(board.white);
+        out.writeLong(board.block);
+        out.writeFloat(label);
+        board = board.placed(move);
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return bytes.toByteArray();
+  }
+
+  /**
+   * データファイルから重みを学習する
+   * 重みは0から始め、エポックごとに学習用と検証用の平均二乗誤差を表示する
+   * @return 学習した重みの評価関数
+   */
+  MyPatternEval train(Path data) throws IOException {
+    var weights = new float[MyPatternEval.SHAPES.length][MyPatternEval.STAGES][];
+    var grads = new float[MyPatternEval.SHAPES.length][MyPatternEval.STAGES][];
+    for (int t = 0; t < weights.length; t++) {
+      for (int s = 0; s < MyPatternEval.STAGES; s++) {
+        weights[t][s] = new float[MyPatternEval.SIZES[t]];
+        grads[t][s] = new float[MyPatternEval.SIZES[t]];
+      }
+    }
+    var batch = new Batch(weights, grads, this.batchSize);
+    var rand = new Random(this.seed);
+
+    for (int epoch = 1; epoch <= this.epochs; epoch++) {
+      long t0 = System.nanoTime();
+      var shuffle = new long[SHUFFLE_RECORDS][];
+      var shuffleLabels = new float[SHUFFLE_RECORDS];
+      int buffered = 0;
+      double validationError = 0;
+      long validationCount = 0;
+      batch.error = 0;
+      batch.count = 0;
+
+      try (var in = new DataInputStream(new BufferedInputStream(Files.newInputStream(data), 1 << 16))) {
+        for (long n = 0; ; n++) {
+          long black, white, block;
+          float label;
+          try {
+            black = in.readLong();
+            white = in.readLong();
+            block = in.readLong();
+            label = in.readFloat();
+          } catch (EOFException e) {
+            break;
+          }
+
+          if (n % VALIDATION_INTERVAL == 0) {
+            float err = label - batch.predict(black, white, block);
+            validationError += err * err;
+            validationCount++;
+            continue;
+          }
+
+          // バッファが一杯なら、ランダムに選んだ局面を学習して新しい局面と入れ替える
+          var record = new long[] { black, white, block };
+          if (buffered < SHUFFLE_RECORDS) {
+            shuffle[buffered] = record;
+            shuffleLabels[buffered++] = label;
+          } else {
+            int j = rand.nextInt(SHUFFLE_RECORDS);
+            batch.add(shuffle[j], shuffleLabels[j], this.rate);
+            shuffle[j] = record;
+            shuffleLabels[j] = label;
+          }
+        }
+      }
+      for (int i = buffered - 1; i >= 0; i--) {
+        int j = rand.nextInt(i + 1);
+        batch.add(shuffle[j], shuffleLabels[j], this.rate);
+        shuffle[j] = shuffle[i];
+        shuffleLabels[j] = shuffleLabels[i];
+      }
+      batch.step(this.rate);
+
+      System.out.printf("epoch %2d  train mse %8.3f  validation mse %8.3f  %.1fs\n", epoch,
+          batch.error / Math.max(1, batch.count), validationError / Math.max(1, validationCount),
+          (System.nanoTime() - t0) / 1e9);
+    }
+    return new MyPatternEval(weights);
+  }
+
+  /**
+   * ミニバッチの勾配を溜めて重みを更新するクラス
+   * 勾配は重みと同じ形の配列に溜め、更新した重みの位置だけを0に戻す
+   */
+  static class Batch {
+    /** 重みの表（[種類][進行度][パターンの番号]） */
+    float[][][] weights;
+    /** 勾配の表（weights と同じ形） */
+    float[][][] grads;
+    /** ミニバッチ中で各重みを使った局面の数（weights と同じ形） */
+    int[][][] hits;
+    /** ミニバッチの大きさ */
+    int size;
+    /** 現在のミニバッチの局面数 */
+    int filled;
+    /** 現在のミニバッチで勾配を溜めた位置（種類・進行度・番号を1つの整数にしたもの） */
+    int[] touched;
+    /** touched の要素数 */
+    int touchedCount;
+    /** パターンの番号の作業用配列 */
+    int[] indexes = new int[MyPatternEval.PATTERNS.length];
+    /** エポック中の学習用の二乗誤差の合計 */
+    double error;
+    /** エポック中の学習用の局面数（黒白を入れ替えた局面を含む） */
+    long count;
+
+    Batch(float[][][] weights, float[][][] grads, int size) {
+      this.weights = weights;
+      this.grads = grads;
+      this.hits = new int[weights.length][MyPatternEval.STAGES][];
+      for (int t = 0; t < weights.length; t++)
+        for (int s = 0; s < MyPatternEval.STAGES; s++)
+          this.hits[t][s] = new int[weights[t][s].length];
+      this.size = size;
+      this.touched = new int[2 * size * MyPatternEval.PATTERNS.length];
+    }
+
+    /**
+     * 局面の評価値を現在の重みで計算する（黒から見た値）
+     */
+    float predict(long black, long white, long block) {
+      MyPatternEval.indexes(black, white, this.indexes);
+      int stage = MyPatternEval.stage(LENGTH - Long.bitCount(black | white | block));
+      float v = 0;
+      for (int p = 0; p < this.indexes.length; p++)
+        v += this.weights[MyPatternEval.TYPES[p]][stage][this.indexes[p]];
+      return v;
+    }
+
+    /**
+     * 局面と、黒白を入れ替えた局面の勾配を溜め、ミニバッチが一杯になったら重みを更新する
+     * @param record 黒・白・障害物のマスク
+     * @param label 正解の値（黒から見た石差）
+     */
+    void add(long[] record, float label, float rate) {
+      accumulate(record[0], record[1], record[2], label);
+      accumulate(record[1], record[0], record[2], -label);
+      if (++this.filled >= this.size) step(rate);
+    }
+
+    /**
+     * 1局面の二乗誤差の勾配を溜める
+     */
+    void accumulate(long black, long white, long block, float label) {
+      float err = label - predict(black, white, block);
+      this.error += err * err;
+      this.count++;
+      int stage = MyPatternEval.stage(LENGTH - Long.bitCount(black | white | block));
+      for (int p = 0; p < this.indexes.length; p++) {
+        int t = MyPatternEval.TYPES[p];
+        int index = this.indexes[p];
+        this.grads[t][stage][index] += err;
+        if (this.hits[t][stage][index]++ == 0)
+          this.touched[this.touchedCount++] = (t * MyPatternEval.STAGES + stage) * MAX_SIZE + index;
+      }
+    }
+
+    /**
+     * 溜めた勾配で重みを更新する
+     * 各重みを、その重みを使った局面の誤差の平均に学習率を掛け、パターンの数で割った分だけ動かす
+     * （1局面だけなら、その局面の誤差が学習率の割合だけ縮む）
+     */
+    void step(float rate) {
+      float scale = rate / MyPatternEval.PATTERNS.length;
+      for (int i = 0; i < this.touchedCount; i++) {
+        int x = this.touched[i];
+        int index = x % MAX_SIZE;
+        int t = x / MAX_SIZE / MyPatternEval.STAGES;
+        int stage = x / MAX_SIZE % MyPatternEval.STAGES;
+        this.weights[t][stage][index] += scale * this.grads[t][stage][index] / this.hits[t][stage][index];
+        this.grads[t][stage][index] = 0;
+        this.hits[t][stage][index] = 0;
+      }
+      this.touchedCount = 0;
+      this.filled = 0;
+    }
+  }
+}
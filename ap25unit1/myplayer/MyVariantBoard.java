@@ -0,0 +1,259 @@
+package myplayer;
+
+import static ap25.Color.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import ap25.*;
+
+/**
+ * 任意の形（MyGeometry）の盤面を扱うビットボード
+ * 黒石・白石・障害物を64ビット整数のマスクで保持し、合法手の生成と石の反転は
+ * 形ごとに計算済みの MyGeometry の表とシフトで行う。大きさや障害物の配置を変えた変種でも
+ * MyBoard のように1マスずつ調べることはない。
+ * ap25 の標準の大きさでは、シフト量が定数になる BitBoard のほうが速く、探索や評価関数も BitBoard を前提とする。
+ * 位置の番号は 行 * geometry.size + 列 なので、標準以外の大きさでは Move の文字列表現は使えない
+ * （toString は MyGeometry.toIndexString で位置を表示する）。
+ */
+public class MyVariantBoard implements Board, Cloneable {
+  /** 盤面の形 */
+  MyGeometry geometry;
+  /** 黒石のマスク */
+  long black;
+  /** 白石のマスク */
+  long white;
+  /** 障害物のマスク（形の障害物と、set で置いた障害物） */
+  long block;
+  /** 最後に打たれた手 */
+  Move move = Move.ofPass(NONE);
+  /** 計算済みの黒の合法手のマスク */
+  long legalBlack;
+  /** 計算済みの白の合法手のマスク */
+  long legalWhite;
+  /** 合法手のマスクのうち計算済みのもの（ビット0:黒、ビット1:白）。石の配置が変わると0に戻す */
+  int legalValid;
+
+  /**
+   * 指定された形の盤面を作成し、障害物と初期配置を設定する
+   * @param geometry 盤面の形
+   */
+  public MyVariantBoard(MyGeometry geometry) {
+    this(geometry, geometry.initialBlack, geometry.initialWhite,
+        geometry.blocks & ~(geometry.initialBlack | geometry.initialWhite), Move.ofPass(NONE));
+  }
+
+  /**
+   * 各マスクと最後の手を指定してボードを作成する
+   */
+  MyVariantBoard(MyGeometry geometry, long black, long white, long block, Move move) {
+    this.geometry = geometry;
+    this.black = black;
+    this.white = white;
+    this.block = block;
+    this.move = move;
+  }
+
+  // ボードのコピーを作成する
+  public MyVariantBoard clone() {
+    var b = new MyVariantBoard(this.geometry, this.black, this.white, this.block, this.move);
+    b.legalBlack = this.legalBlack;
+    b.legalWhite = this.legalWhite;
+    b.legalValid = this.legalValid;
+    return b;
+  }
+
+  public Color get(int k) {
+    long m = 1L << k;
+    if ((this.black & m) != 0) return BLACK;
+    if ((this.white & m) != 0) return WHITE;
+    if ((this.block & m) != 0) return BLOCK;
+    return NONE;
+  }
+
+  public Move getMove() { return this.move; }
+
+  /**
+   * 現在の手番の色を取得する
+   * @return 手番の色（BLACK/WHITE）
+   */
+  public Color getTurn() {
+    return this.move.isNone() ? BLACK : this.move.getColor().flipped();
+  }
+
+  /**
+   * 指定した位置に色をセットする
+   * @param k セットする位置のインデックス
+   * @param color セットする色
+   */
+  public void set(int k, Color color) {
+    long m = 1L << k;
+    this.black &= ~m;
+    this.white &= ~m;
+    this.block &= ~m;
+    this.legalValid = 0;
+    switch (color) {
+    case BLACK: this.black |= m; break;
+    case WHITE: this.white |= m; break;
+    case BLOCK: this.block |= m; break;
+    default: break;
+    }
+  }
+
+  /**
+   * ボードの状態を比較する
+   * @param otherObj 比較対象のオブジェクト
+   * @return 形と石の配置が同じ場合true
+   */
+  public boolean equals(Object otherObj) {
+    if (otherObj instanceof MyVariantBoard) {
+      var other = (MyVariantBoard) otherObj;
+      return this.geometry == other.geometry && this.black == other.black
+          && this.white == other.white && this.block == other.block;
+    }
+    return false;
+  }
+
+  public int hashCode() {
+    return Long.hashCode(this.black * 31 + this.white * 17 + this.block);
+  }
+
+  /**
+   * ボードの状態を文字列として返す
+   * @return フォーマットされたボード状態の文字列表現
+   */
+  public String toString() {
+    return MyBoardFormatter.format(this, this.geometry);
+  }
+
+  /**
+   * 指定された色の石の数を数える
+   * @param color カウントする色
+   * @return その色の石の数
+   */
+  public int count(Color color) {
+    switch (color) {
+    case BLACK: return Long.bitCount(this.black);
+    case WHITE: return Long.bitCount(this.white);
+    case BLOCK: return Long.bitCount(this.block);
+    default: return Long.bitCount(this.geometry.full & ~(this.black | this.white | this.block));
+    }
+  }
+
+  /**
+   * ゲームが終了したかどうかを判定する
+   * @return 黒白両方とも合法手がない場合true
+   */
+  public boolean isEnd() {
+    return legalMask(BLACK) == 0 && legalMask(WHITE) == 0;
+  }
+
+  /**
+   * 勝者の色を返す
+   * @return 勝者の色（BLACK/WHITE）。引き分けまたはゲーム継続中の場合はNONE
+   */
+  public Color winner() {
+    var v = score();
+    if (isEnd() == false || v == 0) return NONE;
+    return v > 0 ? BLACK : WHITE;
+  }
+
+  /**
+   * 反則負けの処理を行う
+   * @param color 反則を行ったプレイヤーの色
+   */
+  public void foul(Color color) {
+    var winner = color.flipped();
+    this.black = winner == BLACK ? this.geometry.full : 0;
+    this.white = winner == WHITE ? this.geometry.full : 0;
+    this.block = 0;
+    this.legalValid = 0;
+  }
+
+  /**
+   * 現在の盤面のスコアを計算する
+   * MyBoard.score() と同じく、片方の色の石が0個の場合は空きマスも勝者の石としてカウントする
+   * @return スコア（正：黒有利、負：白有利）
+   */
+  public int score() {
+    int bs = Long.bitCount(this.black);
+    int ws = Long.bitCount(this.white);
+    int score = bs - ws;
+
+    if (bs == 0 || ws == 0)
+      score += Integer.signum(score) * (this.geometry.length - bs - ws);
+
+    return score;
+  }
+
+  /**
+   * 指定された色の合法手の位置のマスクを取得する
+   * 一度計算したマスクは石の配置が変わるまで覚えておく
+   * @param color プレイヤーの色
+   * @return 合法手のマスク（パスは含まない）
+   */
+  public long legalMask(Color color) {
+    int bit = color == BLACK ? 1 : 2;
+    if ((this.legalValid & bit) == 0) {
+      long empty = this.geometry.full & ~(this.black | this.white | this.block);
+      if (color == BLACK) this.legalBlack = this.geometry.legalMask(this.black, this.white, empty);
+      else this.legalWhite = this.geometry.legalMask(this.white, this.black, empty);
+      this.legalValid |= bit;
+    }
+    return color == BLACK ? this.legalBlack : this.legalWhite;
+  }
+
+  /**
+   * 指定された色の合法手をすべて見つける
+   * @param color プレイヤーの色
+   * @return 合法手のリスト（打てる手がない場合はパスのみ）
+   */
+  public List<Move> findLegalMoves(Color color) {
+    var moves = new ArrayList<Move>();
+    for (long m = legalMask(color); m != 0; m &= m - 1)
+      moves.add(new Move(Long.numberOfTrailingZeros(m), color));
+    if (moves.size() == 0) moves.add(Move.ofPass(color));
+    return moves;
+  }
+
+  /**
+   * 指定された手を打った後のボード状態を返す
+   * @param move 打つ手（位置と色）
+   * @return 新しいボード状態
+   */
+  public MyVariantBoard placed(Move move) {
+    var b = clone();
+    b.move = move;
+
+    if (move.isPass() | move.isNone())
+      return b;
+
+    var k = move.getIndex();
+    long m = 1L << k;
+    if (move.getColor() == BLACK) {
+      long f = this.geometry.flips(k, this.black, this.white);
+      b.black ^= f | m;
+      b.white ^= f;
+    } else {
+      long f = this.geometry.flips(k, this.white, this.black);
+      b.white ^= f | m;
+      b.black ^= f;
+    }
+    b.legalValid = 0;
+
+    return b;
+  }
+
+  /**
+   * 盤面の色を反転したボードを返す
+   * 黒と白を入れ替えた新しいボードを作成する
+   * @return 色を反転した新しいボード
+   */
+  public MyVariantBoard flipped() {
+    var b = new MyVariantBoard(this.geometry, this.white, this.black, this.block, this.move.flipped());
+    b.legalBlack = this.legalWhite;
+    b.legalWhite = this.legalBlack;
+    b.legalValid = (this.legalValid >> 1 | this.legalValid << 1) & 3;
+    return b;
+  }
+}
@@ -14,6 +14,11 @@ public class RandomPlayer extends Player {
    */
   Random rand = new Random();
 
+  /**
+   * 合法手の位置を書き込むバッファ。think のたびに再利用する。
+   */
+  int[] moves = new int[Board.LENGTH];
+
   /**
    * 指定された色のランダムプレイヤーを作成するコンストラクタ。
    * プレイヤー名は"R"に固定される。
@@ -22,13 +27,21 @@ public class RandomPlayer extends Player {
     super("R", color);
   }
 
+  /**
+   * 乱数の種を指定してランダムプレイヤーを作成するコンストラクタ。
+   * 同じ種を与えれば同じ手順で手を選ぶので、対戦結果を再現できる。
+   */
+  public RandomPlayer(Color color, long seed) {
+    this(color);
+    this.rand = new Random(seed);
+  }
+
   /**
    * プレイヤーの思考ルーチン。
-   * 可能な合法手のリストからランダムに一手を選択して返す。
+   * 可能な合法手の中からランダムに一手を選択して返す。
    */
   public Move think(Board board) {
-    var moves = board.findLegalMoves(getColor());
-    var i = this.rand.nextInt(moves.size());
-    return moves.get(i);
+    int n = board.findLegalIndexes(getColor(), this.moves);
+    return new Move(this.moves[this.rand.nextInt(n)], getColor());
   }
 }
@@ -0,0 +1,123 @@
+package myplayer;
+
+/**
+ * 探索結果を記録する置換表
+ * 盤面の Zobrist ハッシュをキーとして、探索深さ・評価値の種類・評価値・最善手を保持する
+ * 大きさは2のべき乗に固定し、オブジェクトを作らないようにプリミティブ配列だけで実装する
+ * 2エントリを1組として使い、同じ組の中では古い探索のもの、浅い探索のものから置き換える
+ */
+class TranspositionTable {
+  /** 評価値の種類：正確な値 */
+  static final int EXACT = 0;
+  /** 評価値の種類：下限値（β カットで打ち切った） */
+  static final int LOWER = 1;
+  /** 評価値の種類：上限値（どの手も α を超えなかった） */
+  static final int UPPER = 2;
+  /** 最善手が記録されていないことを表す値 */
+  static final int NO_MOVE = -2;
+
+  /** 1エントリあたりのバイト数（キーとデータの long 2つ） */
+  static final int ENTRY_BYTES = 16;
+
+  /** キー（データとの排他的論理和で保持する） */
+  final long[] keys;
+  /** データ（評価値、最善手、深さ、種類、世代を詰めたもの。0 は空を表す） */
+  final long[] data;
+  /** インデックス計算用のマスク */
+  final int mask;
+  /** 現在の探索の世代（think ごとに進める） */
+  int generation;
+
+  /**
+   * 使用するメモリ量を指定して置換表を作成する
+   * @param megabytes メモリ量（MB）。エントリ数はこれを超えない最大の2のべき乗になる
+   */
+  TranspositionTable(int megabytes) {
+    long entries = Math.max(2, Long.highestOneBit((long) megabytes * 1024 * 1024 / ENTRY_BYTES));
+    int size = (int) Math.min(entries, 1 << 30);
+    this.keys = new long[size];
+    this.data = new long[size];
+    this.mask = size - 1;
+  }
+
+  /** エントリ数を取得する */
+  int size() { return this.data.length; }
+
+  /** すべてのエントリを消去する */
+  void clear() {
+    java.util.Arrays.fill(this.keys, 0);
+    java.util.Arrays.fill(this.data, 0);
+  }
+
+  /** 新しい探索を始める（以前の探索のエントリを置き換えやすくする） */
+  void newSearch() {
+    this.generation = (this.generation + 1) & 0xFF;
+  }
+
+  /**
+   * 指定したキーのエントリを探す
+   * @param key 盤面のハッシュ
+   * @return 見つかったエントリのデータ（見つからなければ0）
+   */
+  long probe(long key) {
+    int i = (int) key & this.mask & ~1;
+    for (int j = i; j <= i + 1; j++) {
+      long d = this.data[j];
+      if (d != 0 && (this.keys[j] ^ d) == key) return d;
+    }
+    return 0;
+  }
+
+  /**
+   * エントリを記録する
+   * 同じキーがあれば上書きし、なければ組の中で別の世代のもの、次に浅いものを置き換える
+   * @param key 盤面のハッシュ
+   * @param depth 残りの探索深さ
+   * @param bound 評価値の種類（EXACT, LOWER, UPPER）
+   * @param value 評価値
+   * @param move 最善手の位置（パスは Move.PASS、なければ NO_MOVE）
+   */
+  void store(long key, int depth, int bound, float value, int move) {
+    int i = (int) key & this.mask & ~1;
+    int victim = i;
+    for (int j = i; j <= i + 1; j++) {
+      long d = this.data[j];
+      if (d == 0 || (this.keys[j] ^ d) == key) {
+        victim = j;
+        break;
+      }
+      if (replaceable(d, this.data[victim]) && j != victim) victim = j;
+    }
+
+    long d = (Float.floatToRawIntBits(value) & 0xFFFFFFFFL)
+        | (long) (move - NO_MOVE) << 32
+        | (long) Math.min(depth, 0xFF) << 40
+        | (long) bound << 48
+        | 1L << 50
+        | (long) this.generation << 51;
+    this.keys[victim] = key ^ d;
+    this.data[victim] = d;
+  }
+
+  /**
+   * エントリ d がエントリ other より優先して置き換えるべきかどうか
+   * 現在の世代でないもの、次に探索深さの浅いものを優先する
+   */
+  boolean replaceable(long d, long other) {
+    boolean old = generation(d) != this.generation;
+    boolean otherOld = generation(other) != this.generation;
+    if (old != otherOld) return old;
+    return depth(d) < depth(other);
+  }
+
+  /** エントリの評価値を取得する */
+  static float value(long d) { return Float.intBitsToFloat((int) d); }
+  /** エントリの最善手を取得する */
+  static int move(long d) { return (int) (d >>> 32 & 0xFF) + NO_MOVE; }
+  /** エントリの探索深さを取得する */
+  static int depth(long d) { return (int) (d >>> 40 & 0xFF); }
+  /** エントリの評価値の種類を取得する */
+  static int bound(long d) { return (int) (d >>> 48 & 0x3); }
+  /** エントリの世代を取得する */
+  static int generation(long d) { return (int) (d >>> 51 & 0xFF); }
+}